@@ -1,18 +1,22 @@
 package com.xukui.library.pinedittext;
 
-import android.animation.Animator;
-import android.animation.AnimatorSet;
-import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.provider.Settings;
 import android.support.annotation.Nullable;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.AppCompatEditText;
@@ -21,12 +25,23 @@ import android.text.InputType;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.AbsSavedState;
 import android.view.ActionMode;
+import android.view.Choreographer;
+import android.view.Display;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
 import android.view.animation.OvershootInterpolator;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.TextView;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 public class PinEditText extends AppCompatEditText {
 
@@ -34,50 +49,188 @@ public class PinEditText extends AppCompatEditText {
 
     public static final String DEFAULT_MASK = "\u25CF";
 
+    public static final String DEFAULT_PREWARM_ALPHABET = "0123456789";
+
+    //输入的字符集
+    public static final int INPUT_ALPHABET_ANY = 0;
+    public static final int INPUT_ALPHABET_DIGITS = 1;
+    public static final int INPUT_ALPHABET_HEX = 2;
+    public static final int INPUT_ALPHABET_ALPHANUMERIC = 3;
+
+    //动画质量
+    public static final int ANIMATION_TIER_FULL = 0;
+    public static final int ANIMATION_TIER_ALPHA = 1;
+    public static final int ANIMATION_TIER_NONE = 2;
+
+    //一次动画中丢帧达到该数量时降低动画质量
+    private static final int ADAPTIVE_DROPPED_FRAMES_THRESHOLD = 3;
+
+    //内置的字背景形状
+    public static final int SHAPE_NONE = 0;
+    public static final int SHAPE_BOX = 1;
+    public static final int SHAPE_ROUNDED_BOX = 2;
+    public static final int SHAPE_CIRCLE = 3;
+    public static final int SHAPE_UNDERLINE = 4;
+
+    //Stateless, shared by all instances
+    private static final ActionMode.Callback DISABLED_ACTION_MODE_CALLBACK = new ActionMode.Callback() {
+        public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        public void onDestroyActionMode(ActionMode mode) {
+        }
+
+        public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+            return false;
+        }
+
+        public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+            return false;
+        }
+    };
+
+    //预分配的状态集合, 避免绘制时创建数组
+    protected static final int[] STATE_SET_SELECTED = new int[]{android.R.attr.state_selected};
+    protected static final int[] STATE_SET_ERROR = new int[]{android.R.attr.state_active};
+    protected static final int[] STATE_SET_FOCUSED = new int[]{android.R.attr.state_focused};
+    protected static final int[] STATE_SET_FOCUSED_NEXT = new int[]{android.R.attr.state_focused, android.R.attr.state_selected};
+    protected static final int[] STATE_SET_FOCUSED_FILLED = new int[]{android.R.attr.state_focused, android.R.attr.state_checked};
+    protected static final int[] STATE_SET_UNFOCUSED = new int[]{-android.R.attr.state_focused};
+    protected static final int[] STATE_SET_UNFOCUSED_FILLED = new int[]{-android.R.attr.state_focused, android.R.attr.state_checked};
+
+    //字的状态
+    protected static final int SLOT_STATE_ERROR = 0;
+    protected static final int SLOT_STATE_FOCUSED_EMPTY = 1;
+    protected static final int SLOT_STATE_FOCUSED_NEXT = 2;
+    protected static final int SLOT_STATE_FOCUSED_FILLED = 3;
+    protected static final int SLOT_STATE_UNFOCUSED_EMPTY = 4;
+    protected static final int SLOT_STATE_UNFOCUSED_FILLED = 5;
+    protected static final int SLOT_STATE_COUNT = 6;
+
+    protected static final int[][] SLOT_STATE_SETS = new int[][]{
+            STATE_SET_ERROR,
+            STATE_SET_FOCUSED,
+            STATE_SET_FOCUSED_NEXT,
+            STATE_SET_FOCUSED_FILLED,
+            STATE_SET_UNFOCUSED,
+            STATE_SET_UNFOCUSED_FILLED,
+    };
+
     protected int mAnimatedType;//动画类型
     protected String mPinMask;//遮罩, 用于密码, 保护内容安全
-    protected StringBuilder mPinMaskBuilder;
     protected String mPinHint;//提示
     protected Drawable mPinBackgroundDrawable;//字背景图
+    protected boolean mPinBackgroundCacheEnabled = true;//是否缓存字背景图
+    protected int mPinShape = SHAPE_NONE;//字背景形状, 没有背景图时使用
+    protected float mPinShapeCornerRadius;
+    protected ColorStateList mPinShapeFillColors;
+    protected Path mPinShapePath = new Path();//按字的大小缓存的形状
+    protected RectF mPinShapeBounds = new RectF();
+    protected Paint mPinShapePaint;
 
 
     protected float mSpace = 24; //24 dp by default, space between the lines
     protected float mCharSize;
     protected float mNumChars = 4;
     protected float mTextBottomPadding = 8; //8dp by default, height of the text from our lines
+    protected int mGroupSize = 0;//每组字数, 0为不分组
+    protected float mGroupSpacing = 0;//组之间额外的间距
+    protected boolean mVirtualized = false;//只绘制可见的字, 用于很长的内容
+    protected Rect mVisibleRect = new Rect();
+    protected int mFirstVisibleSlot = 0;
+    protected int mLastVisibleSlot = -1;
+    private final ViewTreeObserver.OnScrollChangedListener mScrollChangedListener = new ViewTreeObserver.OnScrollChangedListener() {
+
+        @Override
+        public void onScrollChanged() {
+            //Scrolling parents do not redraw us, redraw when other slots come into view.
+            if (mVirtualized && mLineCoords != null && mSlotGeometryValid && updateVisibleSlotRange()) {
+                invalidate();
+            }
+        }
+
+    };
     protected int mMaxLength = 4;
+    protected int mInputAlphabet = INPUT_ALPHABET_ANY;//允许输入的字符集
+    protected char[] mPinBuffer;//输入内容的副本, 固定长度, 可擦除
+    protected int mPinLength;
+    protected boolean mSaveMaskedPin = false;//被遮罩时是否保存输入内容
+    private boolean mRestoringState = false;
     protected RectF[] mLineCoords;
+    protected boolean mSlotGeometryValid = false;
+
+    //上次测量的参数和结果
+    private int mLastWidthMeasureSpec;
+    private int mLastHeightMeasureSpec;
+    private float mLastMeasuredNumChars;
+    private float mLastMeasuredSpace;
+    private float mLastMeasuredGroupSpacing;
+    private int mLastMeasuredPadding;
+    private int mLastMeasuredMinimumWidth;
+    private int mLastMeasuredWidth = -1;
+    private int mLastMeasuredHeight;
     protected float[] mCharBottom;
     protected Paint mCharPaint;
     protected Paint mLastCharPaint;
     protected Paint mSingleCharPaint;
     protected Rect mTextHeight = new Rect();
+    private final PinRenderer mRenderer = new PinRenderer();//与PinView共用的绘制和缓存
 
 
     protected OnClickListener mClickListener;
+    protected boolean mPrewarmOnAttach = false;//添加到窗口后, 空闲时预热
+    private boolean mPrewarmed = false;//每个实例只预热一次
+    private final MessageQueue.IdleHandler mPrewarmIdleHandler = new MessageQueue.IdleHandler() {
+
+        @Override
+        public boolean queueIdle() {
+            if (ViewCompat.isAttachedToWindow(PinEditText.this)) {
+                prewarm();
+            }
+            return false;
+        }
+
+    };
     protected OnPinEnteredListener mOnPinEnteredListener = null;
+    protected OnRenderMetricsListener mRenderMetricsListener = null;
+    protected PinValidator mPinValidator;
+    protected Executor mValidationExecutor;
+    protected OnPinValidatedListener mOnPinValidatedListener;
+    private PinValidation mPinValidation;//正在进行的校验
+    private Handler mMainHandler;
+    private long mPinCommitTime;//输入完成的时间
+    private long mFrameIntervalNanos;
+    private long mLastFrameTime;
+    private int mDroppedFrames;
 
     protected float mLineStroke = 1; //1dp by default
     protected float mLineStrokeSelected = 2; //2dp by default
     protected Paint mLinesPaint;
     protected boolean mAnimate = false;
-    protected boolean mHasError = false;
-    protected ColorStateList mOriginalTextColors;
-    protected int[][] mStates = new int[][]{
-            new int[]{android.R.attr.state_selected}, // selected
-            new int[]{android.R.attr.state_active}, // error
-            new int[]{android.R.attr.state_focused}, // focused
-            new int[]{-android.R.attr.state_focused}, // unfocused
-    };
+    protected long[] mSlotAnimationStart;//每个字动画开始的时间, 0为没有动画, -1为等待下一帧
+    protected float[] mSlotAnimationFraction;//每个字动画的进度
+    protected int mActiveAnimations;
+    protected boolean mAdaptiveAnimation = false;//丢帧时自动降低动画质量
+    protected int mAnimationTier = ANIMATION_TIER_FULL;
+    protected float mAnimatorDurationScale = 1;//系统设置的动画时长缩放
+    private boolean mFrameCallbackPosted = false;
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mFrameCallbackPosted = false;
+            advanceAnimations(frameTimeNanos);
+        }
 
-    protected int[] mColors = new int[]{
-            Color.GREEN,
-            Color.RED,
-            Color.BLACK,
-            Color.GRAY
     };
-
-    protected ColorStateList mColorStates = new ColorStateList(mStates, mColors);
+    protected final Interpolator mOvershootInterpolator = new OvershootInterpolator();
+    protected final Interpolator mAlphaInterpolator = new AccelerateDecelerateInterpolator();
+    protected boolean mNotifyOnAnimationEnd = false;
+    protected boolean mHasError = false;
+    protected ColorStateList mOriginalTextColors;
+    protected ColorStateList mColorStates;//线条颜色, 默认与同一主题下的其他实例共享
+    protected boolean mSlotLineStylesValid = false;
 
     public PinEditText(Context context) {
         super(context);
@@ -113,12 +266,21 @@ public class PinEditText extends AppCompatEditText {
             mPinMask = ta.getString(R.styleable.PinEditText_pet_pin_mask);
             mPinHint = ta.getString(R.styleable.PinEditText_pet_pin_hint);
             mPinBackgroundDrawable = ta.getDrawable(R.styleable.PinEditText_pet_pin_background_drawable);
+            mPinShape = ta.getInt(R.styleable.PinEditText_pet_pin_shape, mPinShape);
+            mPinShapeCornerRadius = ta.getDimension(R.styleable.PinEditText_pet_pin_shape_corner_radius, mPinShapeCornerRadius);
+            mPinShapeFillColors = ta.getColorStateList(R.styleable.PinEditText_pet_pin_shape_fill_colors);
 
 
             mLineStroke = ta.getDimension(R.styleable.PinEditText_pin_line_stroke, mLineStroke);
             mLineStrokeSelected = ta.getDimension(R.styleable.PinEditText_pin_line_stroke_selected, mLineStrokeSelected);
             mSpace = ta.getDimension(R.styleable.PinEditText_pin_character_spacing, mSpace);
             mTextBottomPadding = ta.getDimension(R.styleable.PinEditText_pin_text_bottom_padding, mTextBottomPadding);
+            mGroupSize = ta.getInt(R.styleable.PinEditText_pet_group_size, mGroupSize);
+            mGroupSpacing = ta.getDimension(R.styleable.PinEditText_pet_group_spacing, mGroupSpacing);
+            mVirtualized = ta.getBoolean(R.styleable.PinEditText_pet_virtualized, mVirtualized);
+            mPrewarmOnAttach = ta.getBoolean(R.styleable.PinEditText_pet_prewarm, mPrewarmOnAttach);
+            mAdaptiveAnimation = ta.getBoolean(R.styleable.PinEditText_pet_adaptive_animation, mAdaptiveAnimation);
+            mInputAlphabet = ta.getInt(R.styleable.PinEditText_pet_input_alphabet, mInputAlphabet);
 
 
             ColorStateList colors = ta.getColorStateList(R.styleable.PinEditText_pin_line_colors);
@@ -133,96 +295,85 @@ public class PinEditText extends AppCompatEditText {
             mPinMask = DEFAULT_MASK;
         }
 
-        mCharPaint = new Paint(getPaint());
-        mLastCharPaint = new Paint(getPaint());
-        mSingleCharPaint = new Paint(getPaint());
-        mLinesPaint = new Paint(getPaint());
-        mLinesPaint.setStrokeWidth(mLineStroke);
-
-        TypedValue outValue = new TypedValue();
-        context.getTheme().resolveAttribute(R.attr.colorControlActivated,
-                outValue, true);
-        int colorSelected = outValue.data;
-        mColors[0] = colorSelected;
-
-        int colorFocused = isInEditMode() ? Color.GRAY : Color.parseColor("#6B767E");
-        mColors[1] = colorFocused;
-
-        int colorUnfocused = isInEditMode() ? Color.GRAY : Color.parseColor("#6B767E");
-        mColors[2] = colorUnfocused;
+        if (mColorStates == null) {
+            mColorStates = PinStyle.obtain(context, isInEditMode()).lineColors;
+        }
 
         setBackgroundResource(0);
 
-        mMaxLength = attrs.getAttributeIntValue(XML_NAMESPACE_ANDROID, "maxLength", 4);
+        mMaxLength = attrs == null ? 4 : attrs.getAttributeIntValue(XML_NAMESPACE_ANDROID, "maxLength", 4);
         mNumChars = mMaxLength;
+        if (mInputAlphabet != INPUT_ALPHABET_ANY) {
+            setFilters(new InputFilter[]{new PinInputFilter(mInputAlphabet, mMaxLength)});
+        }
 
         //Disable copy paste
-        super.setCustomSelectionActionModeCallback(new ActionMode.Callback() {
-            public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
-                return false;
-            }
+        super.setCustomSelectionActionModeCallback(DISABLED_ACTION_MODE_CALLBACK);
 
-            public void onDestroyActionMode(ActionMode mode) {
-            }
+        //Set here, so a long click listener set by the app afterwards still replaces it.
+        SelectionListener selectionListener = new SelectionListener();
+        super.setOnClickListener(selectionListener);
+        super.setOnLongClickListener(selectionListener);
 
-            public boolean onCreateActionMode(ActionMode mode, Menu menu) {
-                return false;
-            }
-
-            public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
-                return false;
-            }
-        });
-        // When tapped, move cursor to end of text.
-        super.setOnClickListener(new OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                setSelection(getText().length());
-                if (mClickListener != null) {
-                    mClickListener.onClick(v);
-                }
-            }
-        });
+        mAnimate = mAnimatedType > -1;
+    }
 
-        super.setOnLongClickListener(new OnLongClickListener() {
-            @Override
-            public boolean onLongClick(View v) {
-                setSelection(getText().length());
-                return true;
-            }
-        });
+    private void initView(Context context) {
+    }
 
-        if (!TextUtils.isEmpty(mPinMask)) {
-            mPinMaskBuilder = getMaskChars();
+    /**
+     * Creates the drawing paints on first use, so views that are never laid out do not
+     * pay for them. They copy the text paint as it is at that time.
+     */
+    protected void ensurePaints() {
+        if (mCharPaint != null) {
+            return;
         }
 
+        mCharPaint = new Paint(getPaint());
+        mLastCharPaint = new Paint(getPaint());
+        mSingleCharPaint = new Paint(getPaint());
+        mLinesPaint = new Paint(getPaint());
+        mLinesPaint.setStrokeWidth(mLineStroke);
+        mPinShapePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
         //Height of the characters, used if there is a background drawable
         getPaint().getTextBounds("|", 0, 1, mTextHeight);
-
-        mAnimate = mAnimatedType > -1;
-    }
-
-    private void initView(Context context) {
     }
 
     public void setMaxLength(final int maxLength) {
+        //The filter is installed even when the slots are unchanged, it may have been replaced.
+        setFilters(new InputFilter[]{new PinInputFilter(mInputAlphabet, maxLength)});
+
+        if (maxLength == mMaxLength && maxLength == mNumChars) {
+            //Same slots, only the text has to be cleared.
+            if (getText().length() > 0) {
+                setText(null);
+            }
+            return;
+        }
+
         mMaxLength = maxLength;
         mNumChars = maxLength;
-
-        setFilters(new InputFilter[]{new InputFilter.LengthFilter(maxLength)});
+        wipePinBuffer();
+        mPinBuffer = null;
+        cancelAnimations();
 
         setText(null);
+        invalidateSlotGeometry();
+        requestLayout();
         invalidate();
     }
 
     public void setMask(String mask) {
         mPinMask = mask;
-        mPinMaskBuilder = null;
+        invalidateTextWidths(0);
         invalidate();
     }
 
     public void setCharHint(String hint) {
         mPinHint = hint;
+        mRenderer.invalidateHintWidth();
         invalidate();
     }
 
@@ -240,49 +391,343 @@ public class PinEditText extends AppCompatEditText {
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
+        clearPinBackgroundCache();
+        ensurePaints();
         mOriginalTextColors = getTextColors();
         if (mOriginalTextColors != null) {
             mLastCharPaint.setColor(mOriginalTextColors.getDefaultColor());
             mCharPaint.setColor(mOriginalTextColors.getDefaultColor());
             mSingleCharPaint.setColor(getCurrentHintTextColor());
         }
-        int availableWidth = getWidth() - ViewCompat.getPaddingEnd(this) - ViewCompat.getPaddingStart(this);
-        if (mSpace < 0) {
-            mCharSize = (availableWidth / (mNumChars * 2 - 1));
-        } else {
-            mCharSize = (availableWidth - (mSpace * (mNumChars - 1))) / mNumChars;
+        updateSlotGeometry();
+    }
+
+    /**
+     * Lays out the slots, reusing the existing coordinate objects when the slot count
+     * has not changed.
+     */
+    protected void updateSlotGeometry() {
+        mSlotGeometryValid = true;
+        int numChars = (int) mNumChars;
+        if (mLineCoords == null || mLineCoords.length != numChars) {
+            mLineCoords = new RectF[numChars];
+            for (int i = 0; i < numChars; i++) {
+                mLineCoords[i] = new RectF();
+            }
+            mCharBottom = new float[numChars];
         }
-        mLineCoords = new RectF[(int) mNumChars];
-        mCharBottom = new float[(int) mNumChars];
-        int startX;
         int bottom = getHeight() - getPaddingBottom();
-        int rtlFlag;
+        int top = mPinBackgroundDrawable != null || mPinShape != SHAPE_NONE ? getPaddingTop() : bottom;
         final boolean isLayoutRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
-        if (isLayoutRtl) {
-            rtlFlag = -1;
-            startX = (int) (getWidth() - ViewCompat.getPaddingStart(this) - mCharSize);
-        } else {
-            rtlFlag = 1;
-            startX = ViewCompat.getPaddingStart(this);
+        mCharSize = PinRenderer.layoutSlots(mLineCoords, getWidth(), ViewCompat.getPaddingStart(this), ViewCompat.getPaddingEnd(this),
+                top, bottom, mSpace, mGroupSize, mGroupSpacing, isLayoutRtl);
+        for (int i = 0; i < numChars; i++) {
+            mCharBottom[i] = mLineCoords[i].bottom - mTextBottomPadding;
         }
-        for (int i = 0; i < mNumChars; i++) {
-            mLineCoords[i] = new RectF(startX, bottom, startX + mCharSize, bottom);
-            if (mPinBackgroundDrawable != null) {
-                mLineCoords[i].top = getPaddingTop();
-                mLineCoords[i].right = startX + mLineCoords[i].width();
+
+        if (mPinShape != SHAPE_NONE && numChars > 0) {
+            updatePinShapePath(mCharSize, mLineCoords[0].height());
+            mRenderer.invalidateShapes();
+        }
+    }
+
+    /**
+     * Builds the slot shape once per slot size, in slot coordinates. It is inset by half of
+     * the widest stroke so the outline is never clipped.
+     */
+    private void updatePinShapePath(float width, float height) {
+        mPinShapePath.reset();
+        float inset = Math.max(mLineStroke, mLineStrokeSelected) / 2;
+        switch (mPinShape) {
+            case SHAPE_BOX:
+                mPinShapePath.addRect(inset, inset, width - inset, height - inset, Path.Direction.CW);
+                break;
+
+            case SHAPE_ROUNDED_BOX:
+                mPinShapeBounds.set(inset, inset, width - inset, height - inset);
+                mPinShapePath.addRoundRect(mPinShapeBounds, mPinShapeCornerRadius, mPinShapeCornerRadius, Path.Direction.CW);
+                break;
+
+            case SHAPE_CIRCLE:
+                mPinShapePath.addCircle(width / 2, height / 2, Math.min(width, height) / 2 - inset, Path.Direction.CW);
+                break;
+
+            case SHAPE_UNDERLINE:
+                mPinShapePath.moveTo(0, height);
+                mPinShapePath.lineTo(width, height);
+                break;
+        }
+    }
+
+    private float getTotalGroupSpacing() {
+        if (mGroupSize <= 0 || mNumChars <= 1) {
+            return 0;
+        }
+        return ((int) (mNumChars - 1) / mGroupSize) * mGroupSpacing;
+    }
+
+    protected void invalidateSlotGeometry() {
+        mSlotGeometryValid = false;
+        clearPinBackgroundCache();
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        Parcelable superState = super.onSaveInstanceState();
+        //Drop TextView's copy of the text, spans and selection, only the View state is kept.
+        if (superState instanceof TextView.SavedState) {
+            superState = ((TextView.SavedState) superState).getSuperState();
+            if (superState == null) {
+                superState = AbsSavedState.EMPTY_STATE;
+            }
+        }
+
+        SavedState ss = new SavedState(superState);
+        if (TextUtils.isEmpty(mPinMask) || mSaveMaskedPin) {
+            ss.pin = new char[mPinLength];
+            if (mPinLength > 0) {
+                System.arraycopy(mPinBuffer, 0, ss.pin, 0, mPinLength);
             }
+        }
+        ss.hasError = mHasError;
+        ss.maxLength = mMaxLength;
+        return ss;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
 
-            if (mSpace < 0) {
-                startX += rtlFlag * mCharSize * 2;
+        SavedState ss = (SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        if (ss.maxLength != mMaxLength) {
+            setMaxLength(ss.maxLength);
+        }
+        if (ss.pin != null) {
+            //Restored text is shown as it is, without animations or listeners.
+            mRestoringState = true;
+            setText(ss.pin, 0, ss.pin.length);
+            mRestoringState = false;
+            //setText moves the cursor to the start, new input goes after the pin.
+            setSelection(ss.pin.length);
+            Arrays.fill(ss.pin, '\0');
+            setError(ss.hasError);
+        }
+    }
+
+    /**
+     * Whether a masked pin is kept in the saved instance state. Off by default, so a
+     * password is never written to a Bundle.
+     */
+    public void setSaveMaskedPin(boolean save) {
+        mSaveMaskedPin = save;
+    }
+
+    static class SavedState extends BaseSavedState {
+
+        char[] pin;//null when not saved
+        boolean hasError;
+        int maxLength;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            pin = in.createCharArray();
+            hasError = in.readInt() != 0;
+            maxLength = in.readInt();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeCharArray(pin);
+            out.writeInt(hasError ? 1 : 0);
+            out.writeInt(maxLength);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+
+        };
+
+    }
+
+    /**
+     * Restricts the input to a fixed alphabet. Invalid characters are dropped before they
+     * reach the text, together with the length limit in a single filter.
+     *
+     * @param alphabet One of {@link #INPUT_ALPHABET_ANY}, {@link #INPUT_ALPHABET_DIGITS},
+     *                 {@link #INPUT_ALPHABET_HEX} or {@link #INPUT_ALPHABET_ALPHANUMERIC}.
+     */
+    public void setInputAlphabet(int alphabet) {
+        mInputAlphabet = alphabet;
+        setFilters(new InputFilter[]{new PinInputFilter(alphabet, mMaxLength)});
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        invalidateSlotGeometry();
+    }
+
+    @Override
+    public void setPaddingRelative(int start, int top, int end, int bottom) {
+        super.setPaddingRelative(start, top, end, bottom);
+        invalidateSlotGeometry();
+    }
+
+    @Override
+    public void onRtlPropertiesChanged(int layoutDirection) {
+        super.onRtlPropertiesChanged(layoutDirection);
+        invalidateSlotGeometry();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mVirtualized) {
+            getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
+        }
+        if (mPrewarmOnAttach && !mPrewarmed) {
+            //Recycled views are attached many times, warm them up only once.
+            Looper.myQueue().addIdleHandler(mPrewarmIdleHandler);
+        }
+        mAnimatorDurationScale = Settings.Global.getFloat(getContext().getContentResolver(),
+                Settings.Global.ANIMATOR_DURATION_SCALE, 1);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
+        Looper.myQueue().removeIdleHandler(mPrewarmIdleHandler);
+        //Stops the frame clock, a detached view must not report onPinEntered.
+        cancelAnimations();
+        //A result arriving after detach is dropped.
+        cancelValidation();
+        clearPinBackgroundCache();
+    }
+
+    /**
+     * Same as {@link #prewarm(CharSequence)} with the input alphabet, or
+     * {@link #DEFAULT_PREWARM_ALPHABET} if any character is accepted.
+     */
+    public void prewarm() {
+        String alphabet = PinInputFilter.getChars(mInputAlphabet);
+        prewarm(alphabet == null ? DEFAULT_PREWARM_ALPHABET : alphabet);
+    }
+
+    /**
+     * Pays the one-time costs of the first keystroke ahead of time: creates the paints,
+     * measures and rasterises the glyphs of {@code alphabet}, the mask and the hint, loads
+     * the animation classes and lays out the slots if the view already has a size.
+     *
+     * @param alphabet The characters expected to be typed.
+     */
+    public void prewarm(CharSequence alphabet) {
+        mPrewarmed = true;
+        ensurePaints();
+        getHintWidth();
+        if (!TextUtils.isEmpty(mPinMask)) {
+            getTextWidths(getMaskChars(mMaxLength), mMaxLength);
+        }
+        if (getWidth() > 0 && !mSlotGeometryValid) {
+            updateSlotGeometry();
+        }
+
+        //Draw everything once in software, so the glyphs are in the glyph cache.
+        Paint.FontMetricsInt fontMetrics = mCharPaint.getFontMetricsInt();
+        int height = fontMetrics.bottom - fontMetrics.top;
+        int width = (int) Math.ceil(Math.max(mCharPaint.measureText(alphabet, 0, alphabet.length()), mCharSize));
+        if (width > 0 && height > 0) {
+            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+            Canvas canvas = new Canvas(bitmap);
+            float baseline = -fontMetrics.top;
+            canvas.drawText(alphabet, 0, alphabet.length(), 0, baseline, mCharPaint);
+            if (!TextUtils.isEmpty(mPinMask)) {
+                canvas.drawText(mPinMask, 0, baseline, mCharPaint);
+            }
+            if (mPinHint != null) {
+                canvas.drawText(mPinHint, 0, baseline, mSingleCharPaint);
+            }
+            bitmap.recycle();
+        }
+
+        //Loads the animation classes and the frame clock.
+        Choreographer.getInstance();
+        applySlotAnimation(0.5f);
+    }
+
+    /**
+     * Only draws the slots that are visible on screen, for long codes inside scrolling
+     * containers.
+     */
+    public void setVirtualized(boolean virtualized) {
+        if (mVirtualized == virtualized) {
+            return;
+        }
+        mVirtualized = virtualized;
+        if (ViewCompat.isAttachedToWindow(this)) {
+            if (virtualized) {
+                getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
             } else {
-                startX += rtlFlag * (mCharSize + mSpace);
+                getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
             }
-            mCharBottom[i] = mLineCoords[i].bottom - mTextBottomPadding;
         }
+        invalidate();
+    }
+
+    /**
+     * @param groupSize Number of slots per group, 0 to disable grouping.
+     */
+    public void setGroupSize(int groupSize) {
+        mGroupSize = groupSize;
+        invalidateSlotGeometry();
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * @param groupSpacing Extra space between groups, in pixels.
+     */
+    public void setGroupSpacing(float groupSpacing) {
+        mGroupSpacing = groupSpacing;
+        invalidateSlotGeometry();
+        requestLayout();
+        invalidate();
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int padding = getPaddingLeft() + getPaddingRight();
+        int minimumWidth = getSuggestedMinimumWidth();
+        if (mLastMeasuredWidth != -1
+                && widthMeasureSpec == mLastWidthMeasureSpec
+                && heightMeasureSpec == mLastHeightMeasureSpec
+                && mNumChars == mLastMeasuredNumChars
+                && mSpace == mLastMeasuredSpace
+                && getTotalGroupSpacing() == mLastMeasuredGroupSpacing
+                && padding == mLastMeasuredPadding
+                && minimumWidth == mLastMeasuredMinimumWidth) {
+            setMeasuredDimension(mLastMeasuredWidth, mLastMeasuredHeight);
+            return;
+        }
+
         int widthMode = MeasureSpec.getMode(widthMeasureSpec);
         int heightMode = MeasureSpec.getMode(heightMeasureSpec);
         int measuredWidth = 0;
@@ -295,13 +740,13 @@ public class PinEditText extends AppCompatEditText {
             measuredHeight = (int) ((measuredWidth - (mNumChars - 1 * mSpace)) / mNumChars);
         } else if (heightMode == MeasureSpec.EXACTLY) {
             measuredHeight = MeasureSpec.getSize(heightMeasureSpec);
-            measuredWidth = (int) ((measuredHeight * mNumChars) + (mSpace * mNumChars - 1));
+            measuredWidth = (int) ((measuredHeight * mNumChars) + (mSpace * mNumChars - 1) + getTotalGroupSpacing());
         } else if (widthMode == MeasureSpec.AT_MOST) {
             measuredWidth = MeasureSpec.getSize(widthMeasureSpec);
             measuredHeight = (int) ((measuredWidth - (mNumChars - 1 * mSpace)) / mNumChars);
         } else if (heightMode == MeasureSpec.AT_MOST) {
             measuredHeight = MeasureSpec.getSize(heightMeasureSpec);
-            measuredWidth = (int) ((measuredHeight * mNumChars) + (mSpace * mNumChars - 1));
+            measuredWidth = (int) ((measuredHeight * mNumChars) + (mSpace * mNumChars - 1) + getTotalGroupSpacing());
         } else {
             // Both unspecific
             // Try for a width based on our minimum
@@ -312,8 +757,16 @@ public class PinEditText extends AppCompatEditText {
             measuredHeight = (int) ((measuredWidth - (mNumChars - 1 * mSpace)) / mNumChars);
         }
 
-        setMeasuredDimension(
-                resolveSizeAndState(measuredWidth, widthMeasureSpec, 1), resolveSizeAndState(measuredHeight, heightMeasureSpec, 0));
+        mLastWidthMeasureSpec = widthMeasureSpec;
+        mLastHeightMeasureSpec = heightMeasureSpec;
+        mLastMeasuredNumChars = mNumChars;
+        mLastMeasuredSpace = mSpace;
+        mLastMeasuredGroupSpacing = getTotalGroupSpacing();
+        mLastMeasuredPadding = padding;
+        mLastMeasuredMinimumWidth = minimumWidth;
+        mLastMeasuredWidth = resolveSizeAndState(measuredWidth, widthMeasureSpec, 1);
+        mLastMeasuredHeight = resolveSizeAndState(measuredHeight, heightMeasureSpec, 0);
+        setMeasuredDimension(mLastMeasuredWidth, mLastMeasuredHeight);
     }
 
     @Override
@@ -321,6 +774,25 @@ public class PinEditText extends AppCompatEditText {
         mClickListener = l;
     }
 
+    private class SelectionListener implements OnClickListener, OnLongClickListener {
+
+        // When tapped, move cursor to end of text.
+        @Override
+        public void onClick(View v) {
+            setSelection(getText().length());
+            if (mClickListener != null) {
+                mClickListener.onClick(v);
+            }
+        }
+
+        @Override
+        public boolean onLongClick(View v) {
+            setSelection(getText().length());
+            return true;
+        }
+
+    }
+
     @Override
     public void setCustomSelectionActionModeCallback(ActionMode.Callback actionModeCallback) {
         throw new RuntimeException("setCustomSelectionActionModeCallback() not supported.");
@@ -329,86 +801,201 @@ public class PinEditText extends AppCompatEditText {
     @Override
     protected void onDraw(Canvas canvas) {
         //super.onDraw(canvas);
-        CharSequence text = getFullText();
-        int textLength = text.length();
-        float[] textWidths = new float[textLength];
-        getPaint().getTextWidths(text, 0, textLength, textWidths);
-
-        float hintWidth = 0;
-        if (mPinHint != null) {
-            float[] hintWidths = new float[mPinHint.length()];
-            getPaint().getTextWidths(mPinHint, hintWidths);
-            for (float i : hintWidths) {
-                hintWidth += i;
-            }
+        if (mRenderMetricsListener == null) {
+            drawPin(canvas);
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        int slotsDrawn = drawPin(canvas);
+        mRenderMetricsListener.onDrawMetrics(System.nanoTime() - startTime, slotsDrawn);
+    }
+
+    /**
+     * @return The number of slots drawn.
+     */
+    protected int drawPin(Canvas canvas) {
+        ensurePaints();
+        if (!mSlotGeometryValid) {
+            updateSlotGeometry();
+        }
+        int textLength = mPinLength;
+        char[] text = TextUtils.isEmpty(mPinMask) ? mPinBuffer : getMaskChars(textLength);
+        float[] textWidths = getTextWidths(text, textLength);
+
+        float hintWidth = getHintWidth();
+        int first = 0;
+        int last = (int) mNumChars - 1;
+        if (mVirtualized) {
+            updateVisibleSlotRange();
+            first = mFirstVisibleSlot;
+            last = mLastVisibleSlot;
         }
-        for (int i = 0; i < mNumChars; i++) {
+        //The shapes are behind the characters, drawn with one path per run of slots.
+        if (mPinBackgroundDrawable == null && mPinShape != SHAPE_NONE) {
+            drawPinShapes(canvas, first, last, textLength);
+        }
+        for (int i = first; i <= last; i++) {
             //If a background for the pin characters is specified, it should be behind the characters.
             if (mPinBackgroundDrawable != null) {
-                updateDrawableState(i < textLength, i == textLength);
-                mPinBackgroundDrawable.setBounds((int) mLineCoords[i].left, (int) mLineCoords[i].top, (int) mLineCoords[i].right, (int) mLineCoords[i].bottom);
-                mPinBackgroundDrawable.draw(canvas);
+                mRenderer.drawBackground(canvas, mPinBackgroundDrawable, mLineCoords[i], getSlotState(i < textLength, i == textLength), mPinBackgroundCacheEnabled);
             }
             float middle = mLineCoords[i].left + mCharSize / 2;
             if (textLength > i) {
-                if (!mAnimate || i != textLength - 1) {
-                    canvas.drawText(text, i, i + 1, middle - textWidths[i] / 2, mCharBottom[i], mCharPaint);
+                if (!isSlotAnimating(i)) {
+                    canvas.drawText(text, i, 1, middle - textWidths[i] / 2, mCharBottom[i], mCharPaint);
                 } else {
-                    canvas.drawText(text, i, i + 1, middle - textWidths[i] / 2, mCharBottom[i], mLastCharPaint);
+                    float offset = applySlotAnimation(mSlotAnimationFraction[i]);
+                    canvas.drawText(text, i, 1, middle - textWidths[i] / 2, mCharBottom[i] + offset, mLastCharPaint);
                 }
             } else if (mPinHint != null) {
                 canvas.drawText(mPinHint, middle - hintWidth / 2, mCharBottom[i], mSingleCharPaint);
             }
-            //The lines should be in front of the text (because that's how I want it).
-            if (mPinBackgroundDrawable == null) {
-                updateColorForLines(i <= textLength);
-                canvas.drawLine(mLineCoords[i].left, mLineCoords[i].top, mLineCoords[i].right, mLineCoords[i].bottom, mLinesPaint);
-            }
         }
+        //The lines should be in front of the text (because that's how I want it).
+        if (mPinBackgroundDrawable == null && mPinShape == SHAPE_NONE) {
+            drawLines(canvas, first, last, textLength);
+        }
+        return Math.max(0, last - first + 1);
     }
 
-    private boolean isPassword() {
-        if ((getInputType() & InputType.TYPE_TEXT_VARIATION_PASSWORD) == InputType.TYPE_TEXT_VARIATION_PASSWORD) {
-            return true;
+    private void drawLines(Canvas canvas, int first, int last, int textLength) {
+        if (!mSlotLineStylesValid) {
+            updateSlotLineStyles();
+        }
+        mRenderer.drawLines(canvas, mLinesPaint, mLineCoords, first, last, textLength, mHasError, isFocused());
+    }
 
-        } else if ((getInputType() & InputType.TYPE_NUMBER_VARIATION_PASSWORD) == InputType.TYPE_NUMBER_VARIATION_PASSWORD) {
-            return true;
+    /**
+     * Finds the slots inside the visible part of the view. Slots are ordered along the x
+     * axis, so both ends are found by binary search.
+     *
+     * @return Whether the visible range changed.
+     */
+    protected boolean updateVisibleSlotRange() {
+        int count = mLineCoords.length;
+        int first;
+        int last;
+        if (count == 0) {
+            first = 0;
+            last = -1;
+
+        } else if (!getLocalVisibleRect(mVisibleRect)) {
+            //Not on screen, draw everything so a later scroll never shows empty slots.
+            first = 0;
+            last = count - 1;
 
         } else {
-            return false;
+            boolean rtl = mLineCoords[count - 1].left < mLineCoords[0].left;
+            int firstPosition = findFirstSlotEndingAfter(mVisibleRect.left, rtl);
+            int lastPosition = findLastSlotStartingBefore(mVisibleRect.right, rtl);
+            if (rtl) {
+                first = count - 1 - lastPosition;
+                last = count - 1 - firstPosition;
+            } else {
+                first = firstPosition;
+                last = lastPosition;
+            }
         }
+
+        boolean changed = first != mFirstVisibleSlot || last != mLastVisibleSlot;
+        mFirstVisibleSlot = first;
+        mLastVisibleSlot = last;
+        return changed;
     }
 
-    private CharSequence getFullText() {
-        if (TextUtils.isEmpty(mPinMask)) {
-            return getText();
+    /**
+     * @return The first position, counted from the left, of a slot whose right edge is after {@code x}.
+     */
+    private int findFirstSlotEndingAfter(float x, boolean rtl) {
+        int count = mLineCoords.length;
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mLineCoords[rtl ? count - 1 - mid : mid].right > x) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
 
-        } else {
-            return getMaskChars();
+    /**
+     * @return The last position, counted from the left, of a slot whose left edge is before {@code x}.
+     */
+    private int findLastSlotStartingBefore(float x, boolean rtl) {
+        int count = mLineCoords.length;
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mLineCoords[rtl ? count - 1 - mid : mid].left < x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
+        return low - 1;
     }
 
-    private StringBuilder getMaskChars() {
-        if (mPinMaskBuilder == null) {
-            mPinMaskBuilder = new StringBuilder();
+    private void drawPinShapes(Canvas canvas, int first, int last, int textLength) {
+        if (!mSlotLineStylesValid) {
+            updateSlotLineStyles();
         }
+        mRenderer.drawShapes(canvas, mPinShapePaint, mPinShapePath, mLineCoords, first, last,
+                textLength, mHasError, isFocused(), mPinShape != SHAPE_UNDERLINE);
+    }
 
-        int length = getText().length();
+    protected void clearPinBackgroundCache() {
+        //Also called by TextView's constructor, before the renderer exists.
+        if (mRenderer != null) {
+            mRenderer.clearBackgroundCache();
+        }
+    }
 
-        while (mPinMaskBuilder.length() != length) {
-            if (mPinMaskBuilder.length() < length) {
-                mPinMaskBuilder.append(mPinMask);
+    private float[] getTextWidths(char[] text, int length) {
+        return mRenderer.getTextWidths(getPaint(), text, length, mMaxLength);
+    }
 
-            } else {
-                mPinMaskBuilder.deleteCharAt(mPinMaskBuilder.length() - 1);
-            }
+    /**
+     * Drops the cached glyph widths from {@code start} onwards.
+     */
+    protected void invalidateTextWidths(int start) {
+        if (mRenderer != null) {
+            mRenderer.invalidateTextWidths(start);
+        }
+    }
+
+    private float getHintWidth() {
+        return mRenderer.getHintWidth(getPaint(), mPinHint);
+    }
+
+    /**
+     * Drops the cached glyph and hint widths after the text paint changed.
+     */
+    private void invalidateTextMeasurements() {
+        if (mRenderer != null) {
+            mRenderer.invalidateHintWidth();
+            mRenderer.invalidateTextWidths(0);
         }
+    }
+
+    private boolean isPassword() {
+        if ((getInputType() & InputType.TYPE_TEXT_VARIATION_PASSWORD) == InputType.TYPE_TEXT_VARIATION_PASSWORD) {
+            return true;
+
+        } else if ((getInputType() & InputType.TYPE_NUMBER_VARIATION_PASSWORD) == InputType.TYPE_NUMBER_VARIATION_PASSWORD) {
+            return true;
 
-        return mPinMaskBuilder;
+        } else {
+            return false;
+        }
     }
 
-    private int getColorForState(int... states) {
-        return mColorStates.getColorForState(states, Color.GRAY);
+    private char[] getMaskChars(int length) {
+        return mRenderer.getMaskChars(mPinMask, length, mMaxLength);
     }
 
     /**
@@ -416,41 +1003,45 @@ public class PinEditText extends AppCompatEditText {
      *                        the next character to be typed?
      */
     protected void updateColorForLines(boolean hasTextOrIsNext) {
-        if (mHasError) {
-            mLinesPaint.setColor(getColorForState(android.R.attr.state_active));
-        } else if (isFocused()) {
-            mLinesPaint.setStrokeWidth(mLineStrokeSelected);
-            mLinesPaint.setColor(getColorForState(android.R.attr.state_focused));
-            if (hasTextOrIsNext) {
-                mLinesPaint.setColor(getColorForState(android.R.attr.state_selected));
-            }
-        } else {
-            mLinesPaint.setStrokeWidth(mLineStroke);
-            mLinesPaint.setColor(getColorForState(-android.R.attr.state_focused));
+        applyLineStyle(getSlotState(hasTextOrIsNext, false));
+    }
+
+    protected void applyLineStyle(int slotState) {
+        if (!mSlotLineStylesValid) {
+            updateSlotLineStyles();
         }
+        mRenderer.applyLineStyle(mLinesPaint, slotState);
+    }
+
+    /**
+     * Resolves the line colour and stroke of every slot state, so that drawing only has to
+     * look them up. Must be refreshed when the focus, error or colours change.
+     */
+    protected void updateSlotLineStyles() {
+        mSlotLineStylesValid = true;
+        mRenderer.updateSlotStyles(mColorStates, mPinShapeFillColors, mLineStroke, mLineStrokeSelected, isFocused());
+    }
+
+    @Override
+    protected void onFocusChanged(boolean focused, int direction, @Nullable Rect previouslyFocusedRect) {
+        super.onFocusChanged(focused, direction, previouslyFocusedRect);
+        mSlotLineStylesValid = false;
     }
 
     protected void updateDrawableState(boolean hasText, boolean isNext) {
-        if (mHasError) {
-            mPinBackgroundDrawable.setState(new int[]{android.R.attr.state_active});
-        } else if (isFocused()) {
-            mPinBackgroundDrawable.setState(new int[]{android.R.attr.state_focused});
-            if (isNext) {
-                mPinBackgroundDrawable.setState(new int[]{android.R.attr.state_focused, android.R.attr.state_selected});
-            } else if (hasText) {
-                mPinBackgroundDrawable.setState(new int[]{android.R.attr.state_focused, android.R.attr.state_checked});
-            }
-        } else {
-            if (hasText) {
-                mPinBackgroundDrawable.setState(new int[]{-android.R.attr.state_focused, android.R.attr.state_checked});
-            } else {
-                mPinBackgroundDrawable.setState(new int[]{-android.R.attr.state_focused});
-            }
-        }
+        mPinBackgroundDrawable.setState(SLOT_STATE_SETS[getSlotState(hasText, isNext)]);
+    }
+
+    protected int getSlotState(boolean hasText, boolean isNext) {
+        return PinRenderer.getSlotState(mHasError, isFocused(), hasText, isNext);
     }
 
     public void setError(boolean hasError) {
+        if (mHasError == hasError) {
+            return;
+        }
         mHasError = hasError;
+        mSlotLineStylesValid = false;
         invalidate();
     }
 
@@ -482,7 +1073,14 @@ public class PinEditText extends AppCompatEditText {
         setCustomTypeface(tf);
     }
 
+    @Override
+    public void setTextSize(int unit, float size) {
+        super.setTextSize(unit, size);
+        invalidateTextMeasurements();
+    }
+
     private void setCustomTypeface(@Nullable Typeface tf) {
+        invalidateTextMeasurements();
         if (mCharPaint != null) {
             mCharPaint.setTypeface(tf);
             mLastCharPaint.setTypeface(tf);
@@ -493,20 +1091,90 @@ public class PinEditText extends AppCompatEditText {
 
     public void setPinLineColors(ColorStateList colors) {
         mColorStates = colors;
+        mSlotLineStylesValid = false;
         invalidate();
     }
 
     public void setPinBackground(Drawable pinBackground) {
         mPinBackgroundDrawable = pinBackground;
+        invalidateSlotGeometry();
+        invalidate();
+    }
+
+    /**
+     * Draws one of the built-in slot shapes, outlined with the line colours. Ignored while
+     * a pin background drawable is set.
+     *
+     * @param shape One of {@link #SHAPE_NONE}, {@link #SHAPE_BOX}, {@link #SHAPE_ROUNDED_BOX},
+     *              {@link #SHAPE_CIRCLE} or {@link #SHAPE_UNDERLINE}.
+     */
+    public void setPinShape(int shape) {
+        mPinShape = shape;
+        invalidateSlotGeometry();
+        invalidate();
+    }
+
+    public void setPinShapeCornerRadius(float radius) {
+        mPinShapeCornerRadius = radius;
+        invalidateSlotGeometry();
+        invalidate();
+    }
+
+    /**
+     * @param colors Fill colours of the built-in shapes, using the same states as the
+     *               pin background drawable.
+     */
+    public void setPinShapeFillColors(@Nullable ColorStateList colors) {
+        mPinShapeFillColors = colors;
+        mSlotLineStylesValid = false;
+        invalidate();
+    }
+
+    /**
+     * Whether the background drawable is rendered once per slot state and reused.
+     * Disable it for drawables that animate between states.
+     */
+    public void setPinBackgroundCacheEnabled(boolean enabled) {
+        mPinBackgroundCacheEnabled = enabled;
+        if (!enabled) {
+            clearPinBackgroundCache();
+        }
         invalidate();
     }
 
     @Override
     protected void onTextChanged(CharSequence text, final int start, int lengthBefore, final int lengthAfter) {
+        if (TextUtils.isEmpty(mPinMask)) {
+            //Masked slots always show the same glyphs, their widths stay valid.
+            invalidateTextWidths(start);
+        }
+        updatePinBuffer(text, start);
+        if (mRestoringState) {
+            invalidate();
+            return;
+        }
+        if (mRenderMetricsListener != null && text.length() == mMaxLength) {
+            mPinCommitTime = System.nanoTime();
+        }
+        cancelValidation();
         setError(false);
+        if (mPinValidator != null && text.length() == mMaxLength) {
+            validatePin();
+        }
         if (mLineCoords == null || !mAnimate) {
-            if (mOnPinEnteredListener != null && text.length() == mMaxLength) {
-                mOnPinEnteredListener.onPinEntered(text);
+            if (text.length() == mMaxLength) {
+                dispatchPinEntered();
+            }
+            return;
+        }
+
+        //Pasted or autofilled text is shown at once, without waiting for an animation.
+        //An IME replacing its composing text adds one character, which is still animated.
+        if (lengthAfter - lengthBefore > 1) {
+            cancelAnimations();
+            invalidate();
+            if (text.length() == mMaxLength) {
+                dispatchPinEntered();
             }
             return;
         }
@@ -517,119 +1185,407 @@ public class PinEditText extends AppCompatEditText {
         }
 
         if (lengthAfter > lengthBefore) {
-            if (mAnimatedType == 0) {
-                animatePopIn();
+            animateText(start + lengthAfter - 1);
+        }
+    }
 
-            } else {
-                animateBottomUp(text, start);
+    /**
+     * Animates the character typed into {@code slot}. All slots are advanced together by
+     * one frame callback, which invalidates at most once per frame and stops when idle.
+     */
+    private void animateText(int slot) {
+        ensurePaints();
+        int numChars = (int) mNumChars;
+        if (slot < 0 || slot >= numChars) {
+            return;
+        }
+        if (mAnimationTier == ANIMATION_TIER_NONE || mAnimatorDurationScale == 0) {
+            invalidate();
+            if (getText().length() == mMaxLength) {
+                dispatchPinEntered();
             }
+            return;
+        }
+        if (mSlotAnimationStart == null || mSlotAnimationStart.length != numChars) {
+            mSlotAnimationStart = new long[numChars];
+            mSlotAnimationFraction = new float[numChars];
+            mActiveAnimations = 0;
+        }
+
+        if (mActiveAnimations == 0) {
+            mDroppedFrames = 0;
+            mLastFrameTime = 0;
+        }
+        if (mSlotAnimationStart[slot] == 0) {
+            mActiveAnimations++;
+        }
+        mSlotAnimationStart[slot] = -1;
+        mSlotAnimationFraction[slot] = 0;
+        mNotifyOnAnimationEnd = getText().length() == mMaxLength && mOnPinEnteredListener != null;
+
+        if (!mFrameCallbackPosted) {
+            mFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
         }
+        invalidate();
     }
 
-    private void animatePopIn() {
-        ValueAnimator va = ValueAnimator.ofFloat(1, getPaint().getTextSize());
-        va.setDuration(200);
-        va.setInterpolator(new OvershootInterpolator());
-        va.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+    private boolean isSlotAnimating(int slot) {
+        return mActiveAnimations > 0 && slot < mSlotAnimationStart.length && mSlotAnimationStart[slot] != 0;
+    }
 
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                mLastCharPaint.setTextSize((Float) animation.getAnimatedValue());
-                PinEditText.this.invalidate();
+    private void advanceAnimations(long frameTimeNanos) {
+        if (mRenderMetricsListener != null || mAdaptiveAnimation) {
+            countDroppedFrames(frameTimeNanos);
+        }
+
+        long duration = (long) ((mAnimatedType == 0 ? 200 : 300) * 1000000L * mAnimatorDurationScale);
+        boolean changed = false;
+        for (int i = 0; i < mSlotAnimationStart.length; i++) {
+            long start = mSlotAnimationStart[i];
+            if (start == 0) {
+                continue;
+            }
+            if (start == -1) {
+                start = frameTimeNanos;
+                mSlotAnimationStart[i] = start;
             }
 
-        });
-        if (getText().length() == mMaxLength && mOnPinEnteredListener != null) {
-            va.addListener(new Animator.AnimatorListener() {
-                @Override
-                public void onAnimationStart(Animator animation) {
-                }
+            float fraction = (float) (frameTimeNanos - start) / duration;
+            if (fraction >= 1) {
+                mSlotAnimationStart[i] = 0;
+                mActiveAnimations--;
+            }
+            mSlotAnimationFraction[i] = Math.min(fraction, 1);
+            changed = true;
+        }
 
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    mOnPinEnteredListener.onPinEntered(getText());
-                }
+        if (changed) {
+            invalidate();
+        }
 
-                @Override
-                public void onAnimationCancel(Animator animation) {
-                }
+        if (mActiveAnimations > 0) {
+            mFrameCallbackPosted = true;
+            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+        } else {
+            onAnimationsEnd();
+        }
+    }
 
-                @Override
-                public void onAnimationRepeat(Animator animation) {
-                }
-            });
+    /**
+     * Stops all running animations, leaving every slot in its final state.
+     */
+    private void cancelAnimations() {
+        mNotifyOnAnimationEnd = false;
+        if (mFrameCallbackPosted) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFrameCallbackPosted = false;
+        }
+        if (mSlotAnimationStart != null) {
+            Arrays.fill(mSlotAnimationStart, 0);
         }
-        va.start();
+        mActiveAnimations = 0;
     }
 
-    private void animateBottomUp(CharSequence text, final int start) {
-        mCharBottom[start] = mLineCoords[start].bottom - mTextBottomPadding;
-        ValueAnimator animUp = ValueAnimator.ofFloat(mCharBottom[start] + getPaint().getTextSize(), mCharBottom[start]);
-        animUp.setDuration(300);
-        animUp.setInterpolator(new OvershootInterpolator());
-        animUp.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+    private void onAnimationsEnd() {
+        if (mRenderMetricsListener != null) {
+            mRenderMetricsListener.onAnimationFramesDropped(mDroppedFrames);
+        }
+        if (mAdaptiveAnimation && mDroppedFrames >= ADAPTIVE_DROPPED_FRAMES_THRESHOLD
+                && mAnimationTier < ANIMATION_TIER_NONE) {
+            mAnimationTier++;
+        }
 
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                Float value = (Float) animation.getAnimatedValue();
-                mCharBottom[start] = value;
-                PinEditText.this.invalidate();
+        if (mNotifyOnAnimationEnd) {
+            mNotifyOnAnimationEnd = false;
+            if (getText().length() == mMaxLength) {
+                dispatchPinEntered();
             }
+        }
+    }
 
-        });
+    /**
+     * Sets up {@link #mLastCharPaint} for a character at the given animation progress.
+     *
+     * @param fraction The linear progress of the animation, from 0 to 1.
+     * @return The vertical offset of the character.
+     */
+    private float applySlotAnimation(float fraction) {
+        float textSize = getPaint().getTextSize();
+        if (mAnimationTier == ANIMATION_TIER_ALPHA) {
+            mLastCharPaint.setTextSize(textSize);
+            mLastCharPaint.setAlpha((int) (255 * mAlphaInterpolator.getInterpolation(fraction)));
+            return 0;
+
+        } else if (mAnimatedType == 0) {
+            mLastCharPaint.setTextSize(1 + (textSize - 1) * mOvershootInterpolator.getInterpolation(fraction));
+            mLastCharPaint.setAlpha(255);
+            return 0;
+
+        } else {
+            mLastCharPaint.setTextSize(textSize);
+            mLastCharPaint.setAlpha((int) (255 * mAlphaInterpolator.getInterpolation(fraction)));
+            return textSize * (1 - mOvershootInterpolator.getInterpolation(fraction));
+        }
+    }
 
-        mLastCharPaint.setAlpha(255);
-        ValueAnimator animAlpha = ValueAnimator.ofInt(0, 255);
-        animAlpha.setDuration(300);
-        animAlpha.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+    /**
+     * Counts the vsyncs skipped since the previous animation frame.
+     */
+    private void countDroppedFrames(long frameTimeNanos) {
+        if (mFrameIntervalNanos == 0) {
+            Display display = ViewCompat.getDisplay(this);
+            float refreshRate = display == null ? 0 : display.getRefreshRate();
+            mFrameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60));
+        }
 
-            @Override
-            public void onAnimationUpdate(ValueAnimator animation) {
-                Integer value = (Integer) animation.getAnimatedValue();
-                mLastCharPaint.setAlpha(value);
+        if (mLastFrameTime != 0) {
+            int frames = Math.round((float) (frameTimeNanos - mLastFrameTime) / mFrameIntervalNanos);
+            if (frames > 1) {
+                mDroppedFrames += frames - 1;
             }
+        }
+        mLastFrameTime = frameTimeNanos;
+    }
 
-        });
+    /**
+     * Validates the current pin on the validation executor. The result is applied with
+     * {@link #setError(boolean)} on the main thread, unless the text changes first.
+     */
+    private void validatePin() {
+        if (mMainHandler == null) {
+            mMainHandler = new Handler(Looper.getMainLooper());
+        }
 
-        AnimatorSet set = new AnimatorSet();
-        if (text.length() == mMaxLength && mOnPinEnteredListener != null) {
-            set.addListener(new Animator.AnimatorListener() {
+        char[] pin = new char[mPinLength];
+        System.arraycopy(mPinBuffer, 0, pin, 0, mPinLength);
+        mPinValidation = new PinValidation(mPinValidator, pin);
+        try {
+            mValidationExecutor.execute(mPinValidation);
+        } catch (RejectedExecutionException e) {
+            //The executor is shut down or full, the pin stays unvalidated.
+            Arrays.fill(pin, '\0');
+            mPinValidation = null;
+        }
+    }
 
-                @Override
-                public void onAnimationStart(Animator animation) {
-                }
+    private void cancelValidation() {
+        if (mPinValidation != null) {
+            mPinValidation.mCanceled = true;
+            mPinValidation = null;
+        }
+    }
 
-                @Override
-                public void onAnimationEnd(Animator animation) {
-                    mOnPinEnteredListener.onPinEntered(getText());
-                }
+    private class PinValidation implements Runnable {
 
-                @Override
-                public void onAnimationCancel(Animator animation) {
-                }
+        private final PinValidator mValidator;
+        private final char[] mPin;
+        volatile boolean mCanceled = false;
 
-                @Override
-                public void onAnimationRepeat(Animator animation) {
+        PinValidation(PinValidator validator, char[] pin) {
+            mValidator = validator;
+            mPin = pin;
+        }
 
+        @Override
+        public void run() {
+            //A newer pin was entered while this one was queued.
+            if (mCanceled) {
+                Arrays.fill(mPin, '\0');
+                return;
+            }
+
+            final boolean valid;
+            try {
+                valid = mValidator.validate(mPin, mPin.length);
+            } finally {
+                Arrays.fill(mPin, '\0');
+            }
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCanceled || mPinValidation != PinValidation.this) {
+                        return;
+                    }
+                    mPinValidation = null;
+                    setError(!valid);
+                    if (mOnPinValidatedListener != null) {
+                        mOnPinValidatedListener.onPinValidated(valid);
+                    }
                 }
             });
         }
-        set.playTogether(animUp, animAlpha);
-        set.start();
+
+    }
+
+    /**
+     * Mirrors the text from {@code start} onwards into the pin buffer and wipes any
+     * characters that were removed.
+     */
+    private void updatePinBuffer(CharSequence text, int start) {
+        int length = text.length();
+        if (mPinBuffer == null || mPinBuffer.length < length) {
+            char[] buffer = new char[Math.max(length, mMaxLength)];
+            if (mPinBuffer != null) {
+                System.arraycopy(mPinBuffer, 0, buffer, 0, mPinLength);
+                wipePinBuffer();
+            }
+            mPinBuffer = buffer;
+        }
+
+        TextUtils.getChars(text, start, length, mPinBuffer, start);
+        if (mPinLength > length) {
+            Arrays.fill(mPinBuffer, length, mPinLength, '\0');
+        }
+        mPinLength = length;
+    }
+
+    private void wipePinBuffer() {
+        if (mPinBuffer != null) {
+            Arrays.fill(mPinBuffer, '\0');
+        }
+        mPinLength = 0;
+    }
+
+    /**
+     * Copies the entered pin into {@code dest} without creating any String.
+     * The caller should wipe {@code dest} once it is done with it.
+     *
+     * @return The number of characters copied.
+     */
+    public int getPin(char[] dest) {
+        int length = Math.min(mPinLength, dest.length);
+        if (length > 0) {
+            System.arraycopy(mPinBuffer, 0, dest, 0, length);
+        }
+        return length;
+    }
+
+    public int getPinLength() {
+        return mPinLength;
+    }
+
+    /**
+     * Clears the entered pin and overwrites the internal pin buffer.
+     */
+    public void clearPin() {
+        getText().clear();
+        wipePinBuffer();
+    }
+
+    private void dispatchPinEntered() {
+        if (mOnPinEnteredListener != null) {
+            mOnPinEnteredListener.onPinEntered(getText());
+        }
+        if (mRenderMetricsListener != null && mPinCommitTime != 0) {
+            mRenderMetricsListener.onPinEnteredLatency(System.nanoTime() - mPinCommitTime);
+            mPinCommitTime = 0;
+        }
     }
 
     public void setAnimateText(boolean animate) {
         mAnimate = animate;
     }
 
+    /**
+     * When enabled, character animations step down from full to alpha only to none after
+     * an animation drops too many frames. Enabling it again starts over at full quality.
+     */
+    public void setAdaptiveAnimation(boolean adaptive) {
+        mAdaptiveAnimation = adaptive;
+        mAnimationTier = ANIMATION_TIER_FULL;
+    }
+
+    /**
+     * @return One of {@link #ANIMATION_TIER_FULL}, {@link #ANIMATION_TIER_ALPHA} or
+     * {@link #ANIMATION_TIER_NONE}.
+     */
+    public int getAnimationTier() {
+        return mAnimationTier;
+    }
+
     public void setOnPinEnteredListener(OnPinEnteredListener l) {
         mOnPinEnteredListener = l;
     }
 
+    /**
+     * Validates every completed pin off the main thread. Only the latest pin is validated,
+     * work queued for an older pin is skipped once the text changes.
+     *
+     * @param validator Called on {@code executor}, {@code null} to stop validating.
+     */
+    public void setPinValidator(@Nullable PinValidator validator, @Nullable Executor executor) {
+        if (validator != null && executor == null) {
+            throw new IllegalArgumentException("An executor is required to run the validator.");
+        }
+        cancelValidation();
+        mPinValidator = validator;
+        mValidationExecutor = executor;
+    }
+
+    public void setOnPinValidatedListener(@Nullable OnPinValidatedListener l) {
+        mOnPinValidatedListener = l;
+    }
+
+    /**
+     * Opt-in render metrics. Leave it unset to skip all measuring.
+     */
+    public void setOnRenderMetricsListener(@Nullable OnRenderMetricsListener l) {
+        mRenderMetricsListener = l;
+    }
+
     public interface OnPinEnteredListener {
 
         void onPinEntered(CharSequence str);
 
     }
 
+    public interface PinValidator {
+
+        /**
+         * Called on the validation executor. {@code pin} is a private copy that is wiped
+         * once this method returns.
+         *
+         * @return Whether the pin is valid.
+         */
+        boolean validate(char[] pin, int length);
+
+    }
+
+    public interface OnPinValidatedListener {
+
+        /**
+         * Called on the main thread after the error state has been updated.
+         */
+        void onPinValidated(boolean valid);
+
+    }
+
+    /**
+     * Called on the main thread; implementations should only record the values.
+     */
+    public interface OnRenderMetricsListener {
+
+        /**
+         * @param durationNanos Time spent in onDraw.
+         * @param slotsDrawn    Number of slots drawn in this frame.
+         */
+        void onDrawMetrics(long durationNanos, int slotsDrawn);
+
+        /**
+         * Called when a character animation ends.
+         *
+         * @param droppedFrames Number of frames skipped while it was running.
+         */
+        void onAnimationFramesDropped(int droppedFrames);
+
+        /**
+         * @param latencyNanos Time from the last character being committed until
+         *                     {@link OnPinEnteredListener#onPinEntered(CharSequence)} returned.
+         */
+        void onPinEnteredLatency(long latencyNanos);
+
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.xukui.library.pinedittext;
+
+import android.text.InputFilter;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+
+/**
+ * Checks the alphabet and the length of the input in one pass. When every character is
+ * accepted and fits, the source is kept as it is and nothing is allocated. Spans of the
+ * source, such as the IME composing span, are kept on the filtered text.
+ */
+final class PinInputFilter implements InputFilter {
+
+    static final String DIGITS = "0123456789";
+    static final String HEX = "0123456789abcdefABCDEF";
+    static final String ALPHANUMERIC = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private final int mAlphabet;
+    private final int mMaxLength;
+
+    PinInputFilter(int alphabet, int maxLength) {
+        mAlphabet = alphabet;
+        mMaxLength = maxLength;
+    }
+
+    static boolean accept(int alphabet, char c) {
+        switch (alphabet) {
+            case PinEditText.INPUT_ALPHABET_DIGITS:
+                return c >= '0' && c <= '9';
+
+            case PinEditText.INPUT_ALPHABET_HEX:
+                return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+
+            case PinEditText.INPUT_ALPHABET_ALPHANUMERIC:
+                return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return The characters of {@code alphabet}, or {@code null} if any character is accepted.
+     */
+    static String getChars(int alphabet) {
+        switch (alphabet) {
+            case PinEditText.INPUT_ALPHABET_DIGITS:
+                return DIGITS;
+
+            case PinEditText.INPUT_ALPHABET_HEX:
+                return HEX;
+
+            case PinEditText.INPUT_ALPHABET_ALPHANUMERIC:
+                return ALPHANUMERIC;
+
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public CharSequence filter(CharSequence source, int start, int end, Spanned dest, int dstart, int dend) {
+        int keep = mMaxLength - (dest.length() - (dend - dstart));
+        if (keep <= 0) {
+            return "";
+        }
+
+        int i = start;
+        while (i < end && i - start < keep && accept(mAlphabet, source.charAt(i))) {
+            i++;
+        }
+        if (i == end) {
+            return null;
+        }
+
+        if (i - start == keep) {
+            //Only cut off, the spans of the source are kept, the composing span included.
+            if (Character.isHighSurrogate(source.charAt(i - 1))) {
+                i--;
+            }
+            return source.subSequence(start, i);
+        }
+
+        //Only reached when something was rejected. Rejected characters are deleted from a
+        //copy, as DigitsKeyListener does, so the remaining spans keep their positions.
+        SpannableStringBuilder filtered = new SpannableStringBuilder(source, start, end);
+        int kept = i - start;
+        int j = kept;
+        while (j < filtered.length()) {
+            if (kept == keep) {
+                filtered.delete(j, filtered.length());
+            } else if (accept(mAlphabet, filtered.charAt(j))) {
+                kept++;
+                j++;
+            } else {
+                filtered.delete(j, j + 1);
+            }
+        }
+        return filtered;
+    }
+
+}
@@ -0,0 +1,329 @@
+package com.xukui.library.pinedittext;
+
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The slot layout and drawing shared by {@link PinEditText} and {@link PinView}: the slot
+ * coordinates, the line and fill colours resolved per slot state, the glyph, hint and mask
+ * caches, the rendered slot backgrounds and the batched lines and shapes. The views own
+ * the geometry and the paints and pass them in, and tell the renderer when a cached value
+ * has to be dropped.
+ */
+final class PinRenderer {
+
+    final int[] slotLineColors = new int[PinEditText.SLOT_STATE_COUNT];//每种状态的线条颜色
+    final float[] slotLineStrokes = new float[PinEditText.SLOT_STATE_COUNT];//每种状态的线条宽度
+    final int[] slotFillColors = new int[PinEditText.SLOT_STATE_COUNT];//每种状态的填充颜色
+
+    private String mMask;//mMaskChars对应的遮罩
+    private char[] mMaskChars;//重复的遮罩字符, 按位置绘制
+    private float[] mTextWidths;//每个字符的宽度缓存
+    private int mTextWidthsCount;//已缓存宽度的字符数
+    private float mHintWidth;//提示的宽度
+    private boolean mHintWidthValid = false;
+    private final Bitmap[] mBackgroundCache = new Bitmap[PinEditText.SLOT_STATE_COUNT];//每种状态的字背景图缓存
+    private float[] mLinePoints;//所有线条的端点, 一次绘制
+    private final Path[] mShapePaths = new Path[PinEditText.SLOT_STATE_COUNT];//每种状态的所有形状, 一次绘制
+    private int mShapeStates;//mShapePaths中不为空的状态
+    private boolean mShapePathsValid = false;
+    private int mShapeFirst;
+    private int mShapeLast;
+    private int mShapeTextLength;
+    private boolean mShapeHasError;
+    private boolean mShapeFocused;
+
+    static int getSlotState(boolean hasError, boolean focused, boolean hasText, boolean isNext) {
+        if (hasError) {
+            return PinEditText.SLOT_STATE_ERROR;
+        } else if (focused) {
+            if (isNext) {
+                return PinEditText.SLOT_STATE_FOCUSED_NEXT;
+            } else if (hasText) {
+                return PinEditText.SLOT_STATE_FOCUSED_FILLED;
+            } else {
+                return PinEditText.SLOT_STATE_FOCUSED_EMPTY;
+            }
+        } else {
+            if (hasText) {
+                return PinEditText.SLOT_STATE_UNFOCUSED_FILLED;
+            } else {
+                return PinEditText.SLOT_STATE_UNFOCUSED_EMPTY;
+            }
+        }
+    }
+
+    /**
+     * Lays out {@code coords.length} slots between the start and end padding, from the start
+     * of the layout direction, and returns the slot width. Every {@code groupSize} slots are
+     * followed by {@code groupSpacing} more space. Slots start on whole pixels, each step is
+     * truncated before the next one is added.
+     */
+    static float layoutSlots(RectF[] coords, int width, int paddingStart, int paddingEnd,
+                             float top, float bottom, float space, int groupSize, float groupSpacing, boolean rtl) {
+        int count = coords.length;
+        float totalGroupSpacing = groupSize <= 0 || count <= 1 ? 0 : ((count - 1) / groupSize) * groupSpacing;
+        int availableWidth = (int) (width - paddingEnd - paddingStart - totalGroupSpacing);
+        float slotWidth;
+        if (space < 0) {
+            slotWidth = availableWidth / (count * 2f - 1);
+        } else {
+            slotWidth = (availableWidth - (space * (count - 1))) / count;
+        }
+
+        int rtlFlag = rtl ? -1 : 1;
+        int startX = rtl ? (int) (width - paddingStart - slotWidth) : paddingStart;
+        for (int i = 0; i < count; i++) {
+            coords[i].set(startX, top, startX + slotWidth, bottom);
+            if (space < 0) {
+                startX += rtlFlag * slotWidth * 2;
+            } else {
+                startX += rtlFlag * (slotWidth + space);
+            }
+            if (groupSize > 0 && (i + 1) % groupSize == 0) {
+                startX += rtlFlag * groupSpacing;
+            }
+        }
+        return slotWidth;
+    }
+
+    /**
+     * Resolves the line colour, stroke and fill colour of every slot state, so that drawing
+     * only has to look them up. Must be called again when the focus, error or colours change.
+     */
+    void updateSlotStyles(ColorStateList lineColors, @Nullable ColorStateList fillColors,
+                          float lineStroke, float lineStrokeSelected, boolean focused) {
+        int colorSelected = lineColors.getColorForState(PinEditText.STATE_SET_SELECTED, Color.GRAY);
+        int colorFocused = lineColors.getColorForState(PinEditText.STATE_SET_FOCUSED, Color.GRAY);
+        int colorUnfocused = lineColors.getColorForState(PinEditText.STATE_SET_UNFOCUSED, Color.GRAY);
+
+        slotLineColors[PinEditText.SLOT_STATE_ERROR] = lineColors.getColorForState(PinEditText.STATE_SET_ERROR, Color.GRAY);
+        slotLineColors[PinEditText.SLOT_STATE_FOCUSED_EMPTY] = colorFocused;
+        slotLineColors[PinEditText.SLOT_STATE_FOCUSED_NEXT] = colorSelected;
+        slotLineColors[PinEditText.SLOT_STATE_FOCUSED_FILLED] = colorSelected;
+        slotLineColors[PinEditText.SLOT_STATE_UNFOCUSED_EMPTY] = colorUnfocused;
+        slotLineColors[PinEditText.SLOT_STATE_UNFOCUSED_FILLED] = colorUnfocused;
+
+        slotLineStrokes[PinEditText.SLOT_STATE_ERROR] = focused ? lineStrokeSelected : lineStroke;
+        slotLineStrokes[PinEditText.SLOT_STATE_FOCUSED_EMPTY] = lineStrokeSelected;
+        slotLineStrokes[PinEditText.SLOT_STATE_FOCUSED_NEXT] = lineStrokeSelected;
+        slotLineStrokes[PinEditText.SLOT_STATE_FOCUSED_FILLED] = lineStrokeSelected;
+        slotLineStrokes[PinEditText.SLOT_STATE_UNFOCUSED_EMPTY] = lineStroke;
+        slotLineStrokes[PinEditText.SLOT_STATE_UNFOCUSED_FILLED] = lineStroke;
+
+        for (int i = 0; i < PinEditText.SLOT_STATE_COUNT; i++) {
+            slotFillColors[i] = fillColors == null ? Color.TRANSPARENT : fillColors.getColorForState(PinEditText.SLOT_STATE_SETS[i], Color.TRANSPARENT);
+        }
+    }
+
+    void applyLineStyle(Paint paint, int slotState) {
+        paint.setColor(slotLineColors[slotState]);
+        paint.setStrokeWidth(slotLineStrokes[slotState]);
+    }
+
+    /**
+     * Returns {@code mask} repeated over at least {@code length} slots. It is built once per
+     * mask, so drawing a masked pin does no string work.
+     */
+    char[] getMaskChars(String mask, int length, int capacity) {
+        if (mMaskChars == null || mMaskChars.length < length || !mask.equals(mMask)) {
+            char[] chars = new char[Math.max(length, capacity)];
+            int maskLength = mask.length();
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = mask.charAt(i % maskLength);
+            }
+            mMask = mask;
+            mMaskChars = chars;
+        }
+        return mMaskChars;
+    }
+
+    /**
+     * Returns the cached glyph widths of the first {@code length} slots, measuring only
+     * the slots that have changed since the last call.
+     */
+    float[] getTextWidths(Paint paint, char[] text, int length, int capacity) {
+        if (mTextWidths == null || mTextWidths.length < length) {
+            float[] widths = new float[Math.max(length, capacity)];
+            if (mTextWidths != null) {
+                System.arraycopy(mTextWidths, 0, widths, 0, Math.min(mTextWidthsCount, mTextWidths.length));
+            }
+            mTextWidths = widths;
+        }
+
+        for (int i = mTextWidthsCount; i < length; i++) {
+            mTextWidths[i] = paint.measureText(text, i, 1);
+        }
+        if (mTextWidthsCount < length) {
+            mTextWidthsCount = length;
+        }
+        return mTextWidths;
+    }
+
+    /**
+     * Drops the cached glyph widths from {@code start} onwards.
+     */
+    void invalidateTextWidths(int start) {
+        if (mTextWidthsCount > start) {
+            mTextWidthsCount = start;
+        }
+    }
+
+    float getHintWidth(Paint paint, @Nullable String hint) {
+        if (!mHintWidthValid) {
+            mHintWidth = hint == null ? 0 : paint.measureText(hint);
+            mHintWidthValid = true;
+        }
+        return mHintWidth;
+    }
+
+    void invalidateHintWidth() {
+        mHintWidthValid = false;
+    }
+
+    /**
+     * Draws {@code drawable} in {@code coords} for the given slot state. With {@code cached}
+     * it is rendered once per slot state and reused, so that frames only have to blit it.
+     */
+    void drawBackground(Canvas canvas, Drawable drawable, RectF coords, int slotState, boolean cached) {
+        if (cached) {
+            Bitmap bitmap = getBackgroundBitmap(drawable, slotState, (int) Math.ceil(coords.width()), (int) (coords.bottom - coords.top));
+            if (bitmap != null) {
+                canvas.drawBitmap(bitmap, (int) coords.left, (int) coords.top, null);
+                return;
+            }
+        }
+
+        drawable.setState(PinEditText.SLOT_STATE_SETS[slotState]);
+        drawable.setBounds((int) coords.left, (int) coords.top, (int) coords.right, (int) coords.bottom);
+        drawable.draw(canvas);
+    }
+
+    @Nullable
+    private Bitmap getBackgroundBitmap(Drawable drawable, int slotState, int width, int height) {
+        Bitmap bitmap = mBackgroundCache[slotState];
+        if (bitmap == null) {
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            drawable.setState(PinEditText.SLOT_STATE_SETS[slotState]);
+            drawable.setBounds(0, 0, width, height);
+            drawable.draw(new Canvas(bitmap));
+            mBackgroundCache[slotState] = bitmap;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Must be called when the slot size or the background drawable changes.
+     */
+    void clearBackgroundCache() {
+        //Not recycled, a recorded display list may still reference the bitmaps.
+        Arrays.fill(mBackgroundCache, null);
+    }
+
+    /**
+     * Draws the lines of the slots {@code first} to {@code last} with one drawLines call per
+     * run of slots sharing a colour and stroke, which is at most three calls per frame.
+     */
+    void drawLines(Canvas canvas, Paint paint, RectF[] coords, int first, int last,
+                   int textLength, boolean hasError, boolean focused) {
+        if (last < first) {
+            return;
+        }
+
+        int count = last - first + 1;
+        if (mLinePoints == null || mLinePoints.length < count * 4) {
+            mLinePoints = new float[coords.length * 4];
+        }
+        for (int i = first; i <= last; i++) {
+            int offset = (i - first) * 4;
+            mLinePoints[offset] = coords[i].left;
+            mLinePoints[offset + 1] = coords[i].top;
+            mLinePoints[offset + 2] = coords[i].right;
+            mLinePoints[offset + 3] = coords[i].bottom;
+        }
+
+        int runStart = first;
+        int runState = getSlotState(hasError, focused, first < textLength, first == textLength);
+        for (int i = first + 1; i <= last + 1; i++) {
+            int state = i > last ? -1 : getSlotState(hasError, focused, i < textLength, i == textLength);
+            if (state == -1
+                    || slotLineColors[state] != slotLineColors[runState]
+                    || slotLineStrokes[state] != slotLineStrokes[runState]) {
+                applyLineStyle(paint, runState);
+                canvas.drawLines(mLinePoints, (runStart - first) * 4, (i - runStart) * 4, paint);
+                runStart = i;
+                runState = state;
+            }
+        }
+    }
+
+    /**
+     * Draws {@code shape}, given in slot coordinates, in the slots {@code first} to
+     * {@code last}. The slots of each state are merged into one path, so every run of
+     * slots sharing a state is filled and stroked with one drawPath call each. The paths
+     * are only rebuilt when the slots, the text length, the focus or the error change.
+     */
+    void drawShapes(Canvas canvas, Paint paint, Path shape, RectF[] coords, int first, int last,
+                    int textLength, boolean hasError, boolean focused, boolean fill) {
+        if (!mShapePathsValid || first != mShapeFirst || last != mShapeLast
+                || textLength != mShapeTextLength || hasError != mShapeHasError || focused != mShapeFocused) {
+            mShapePathsValid = true;
+            mShapeFirst = first;
+            mShapeLast = last;
+            mShapeTextLength = textLength;
+            mShapeHasError = hasError;
+            mShapeFocused = focused;
+
+            mShapeStates = 0;
+            for (int i = 0; i < mShapePaths.length; i++) {
+                if (mShapePaths[i] != null) {
+                    mShapePaths[i].rewind();
+                }
+            }
+            for (int i = first; i <= last; i++) {
+                int state = getSlotState(hasError, focused, i < textLength, i == textLength);
+                if (mShapePaths[state] == null) {
+                    mShapePaths[state] = new Path();
+                }
+                mShapePaths[state].addPath(shape, coords[i].left, coords[i].top);
+                mShapeStates |= 1 << state;
+            }
+        }
+
+        for (int state = 0; state < mShapePaths.length; state++) {
+            if ((mShapeStates & (1 << state)) == 0) {
+                continue;
+            }
+
+            if (fill && Color.alpha(slotFillColors[state]) != 0) {
+                paint.setStyle(Paint.Style.FILL);
+                paint.setColor(slotFillColors[state]);
+                canvas.drawPath(mShapePaths[state], paint);
+            }
+            paint.setStyle(Paint.Style.STROKE);
+            applyLineStyle(paint, state);
+            canvas.drawPath(mShapePaths[state], paint);
+        }
+    }
+
+    /**
+     * Must be called when the slot geometry or the shape changes.
+     */
+    void invalidateShapes() {
+        mShapePathsValid = false;
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.xukui.library.pinedittext;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.util.SparseArray;
+import android.util.TypedValue;
+
+/**
+ * Theme dependent defaults of {@link PinEditText}, shared by every view whose theme
+ * resolves to the same values. The values are never modified; a view that changes them
+ * replaces its own reference instead.
+ * <p>
+ * The cache is keyed by the resolved colour rather than by the theme, so a theme changed
+ * with {@code applyStyle} after caching gets its own entry. It may be used from any thread,
+ * as views can be inflated in the background.
+ */
+final class PinStyle {
+
+    static final int COLOR_DEFAULT = 0xFF6B767E;
+
+    private static final SparseArray<PinStyle> sCache = new SparseArray<>();//按选中颜色缓存
+
+    final ColorStateList lineColors;//默认的线条颜色
+
+    private PinStyle(ColorStateList lineColors) {
+        this.lineColors = lineColors;
+    }
+
+    static PinStyle obtain(Context context, boolean inEditMode) {
+        int colorSelected = resolveColorSelected(context);
+        if (inEditMode) {
+            return create(colorSelected, Color.GRAY);
+        }
+
+        synchronized (sCache) {
+            PinStyle style = sCache.get(colorSelected);
+            if (style == null) {
+                style = create(colorSelected, COLOR_DEFAULT);
+                sCache.put(colorSelected, style);
+            }
+            return style;
+        }
+    }
+
+    private static int resolveColorSelected(Context context) {
+        TypedValue outValue = new TypedValue();
+        context.getTheme().resolveAttribute(R.attr.colorControlActivated, outValue, true);
+        return outValue.data;
+    }
+
+    private static PinStyle create(int colorSelected, int colorDefault) {
+        ColorStateList lineColors = new ColorStateList(
+                new int[][]{
+                        PinEditText.STATE_SET_SELECTED,
+                        PinEditText.STATE_SET_ERROR,
+                        PinEditText.STATE_SET_FOCUSED,
+                        PinEditText.STATE_SET_UNFOCUSED,
+                },
+                new int[]{
+                        colorSelected,
+                        colorDefault,
+                        colorDefault,
+                        Color.GRAY
+                });
+        return new PinStyle(lineColors);
+    }
+
+}
@@ -0,0 +1,503 @@
+package com.xukui.library.pinedittext;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.os.Parcelable;
+import android.support.annotation.Nullable;
+import android.support.v4.view.ViewCompat;
+import android.text.InputType;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.KeyEvent;
+import android.view.View;
+import android.view.inputmethod.BaseInputConnection;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputMethodManager;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * A lightweight alternative to {@link PinEditText}. It draws the same slots with the same
+ * {@link PinRenderer}, but keeps the pin in its own fixed-size buffer and talks to the
+ * keyboard through a minimal {@link InputConnection}, without TextView's layout, spans and
+ * Editable pipeline.
+ */
+public class PinView extends View {
+
+    private static final String XML_NAMESPACE_ANDROID = "http://schemas.android.com/apk/res/android";
+
+    //android:textSize, android:textColor, android:textColorHint, sorted by id
+    private static final int[] TEXT_ATTRS = new int[]{
+            android.R.attr.textSize,
+            android.R.attr.textColor,
+            android.R.attr.textColorHint
+    };
+
+    protected String mPinMask;//遮罩, 用于密码, 保护内容安全
+    protected String mPinHint;//提示
+    protected Drawable mPinBackgroundDrawable;//字背景图
+    protected boolean mPinBackgroundCacheEnabled = true;//是否缓存字背景图
+
+    protected float mSpace = 24; //24 dp by default, space between the lines
+    protected float mCharSize;
+    protected float mTextBottomPadding = 8; //8dp by default, height of the text from our lines
+    protected float mLineStroke = 1; //1dp by default
+    protected float mLineStrokeSelected = 2; //2dp by default
+    protected int mMaxLength = 4;
+    protected int mInputType = InputType.TYPE_CLASS_NUMBER;
+    protected int mInputAlphabet = PinEditText.INPUT_ALPHABET_ANY;//允许输入的字符集
+
+    protected char[] mPin;//输入的内容, 固定长度
+    protected int mPinLength;
+    protected boolean mSaveMaskedPin = false;//被遮罩时是否保存输入内容
+    protected RectF[] mLineCoords;
+    protected float mTextBottom;
+    protected boolean mSlotGeometryValid = false;
+    protected boolean mHasError = false;
+
+    protected Paint mCharPaint;
+    protected Paint mHintPaint;
+    protected Paint mLinesPaint;
+    protected ColorStateList mColorStates;
+    protected boolean mSlotLineStylesValid = false;
+    private final PinRenderer mRenderer = new PinRenderer();//与PinEditText共用的绘制和缓存
+
+    protected PinEditText.OnPinEnteredListener mOnPinEnteredListener;
+
+    public PinView(Context context) {
+        super(context);
+        initData(context, null, 0);
+    }
+
+    public PinView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        initData(context, attrs, 0);
+    }
+
+    public PinView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        initData(context, attrs, defStyleAttr);
+    }
+
+    private void initData(Context context, AttributeSet attrs, int defStyleAttr) {
+        float multi = context.getResources().getDisplayMetrics().density;
+        mLineStroke = multi * mLineStroke;
+        mLineStrokeSelected = multi * mLineStrokeSelected;
+        mSpace = multi * mSpace;
+        mTextBottomPadding = multi * mTextBottomPadding;
+
+        float textSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 18, context.getResources().getDisplayMetrics());
+        int textColor = Color.BLACK;
+        int hintColor = Color.GRAY;
+
+        if (attrs != null) {
+            TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.PinEditText, defStyleAttr, 0);
+            mPinMask = ta.getString(R.styleable.PinEditText_pet_pin_mask);
+            mPinHint = ta.getString(R.styleable.PinEditText_pet_pin_hint);
+            mPinBackgroundDrawable = ta.getDrawable(R.styleable.PinEditText_pet_pin_background_drawable);
+            mLineStroke = ta.getDimension(R.styleable.PinEditText_pin_line_stroke, mLineStroke);
+            mLineStrokeSelected = ta.getDimension(R.styleable.PinEditText_pin_line_stroke_selected, mLineStrokeSelected);
+            mSpace = ta.getDimension(R.styleable.PinEditText_pin_character_spacing, mSpace);
+            mTextBottomPadding = ta.getDimension(R.styleable.PinEditText_pin_text_bottom_padding, mTextBottomPadding);
+            mColorStates = ta.getColorStateList(R.styleable.PinEditText_pin_line_colors);
+            mInputAlphabet = ta.getInt(R.styleable.PinEditText_pet_input_alphabet, mInputAlphabet);
+            ta.recycle();
+
+            TypedArray textTa = context.obtainStyledAttributes(attrs, TEXT_ATTRS, defStyleAttr, 0);
+            textSize = textTa.getDimension(0, textSize);
+            textColor = textTa.getColor(1, textColor);
+            hintColor = textTa.getColor(2, hintColor);
+            textTa.recycle();
+
+            mMaxLength = attrs.getAttributeIntValue(XML_NAMESPACE_ANDROID, "maxLength", mMaxLength);
+            mInputType = attrs.getAttributeIntValue(XML_NAMESPACE_ANDROID, "inputType", mInputType);
+        }
+
+        if (mColorStates == null) {
+            mColorStates = PinStyle.obtain(context, isInEditMode()).lineColors;
+        }
+
+        mPin = new char[mMaxLength];
+
+        mCharPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mCharPaint.setTextSize(textSize);
+        mCharPaint.setColor(textColor);
+        mHintPaint = new Paint(mCharPaint);
+        mHintPaint.setColor(hintColor);
+        mLinesPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        setFocusableInTouchMode(true);
+        setOnClickListener(new OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                focus();
+            }
+        });
+    }
+
+    public void setMaxLength(int maxLength) {
+        Arrays.fill(mPin, '\0');
+        mMaxLength = maxLength;
+        mPin = new char[maxLength];
+        mPinLength = 0;
+        mRenderer.invalidateTextWidths(0);
+        invalidateSlotGeometry();
+        requestLayout();
+        invalidate();
+    }
+
+    public void setMask(String mask) {
+        mPinMask = mask;
+        mRenderer.invalidateTextWidths(0);
+        invalidate();
+    }
+
+    public void setCharHint(String hint) {
+        mPinHint = hint;
+        mRenderer.invalidateHintWidth();
+        invalidate();
+    }
+
+    /**
+     * @param type One of the {@link InputType} classes, reported to the keyboard.
+     */
+    public void setInputType(int type) {
+        mInputType = type;
+        InputMethodManager inputMethodManager = (InputMethodManager) getContext()
+                .getSystemService(Context.INPUT_METHOD_SERVICE);
+        inputMethodManager.restartInput(this);
+    }
+
+    /**
+     * @param alphabet One of the {@code PinEditText.INPUT_ALPHABET_} constants.
+     */
+    public void setInputAlphabet(int alphabet) {
+        mInputAlphabet = alphabet;
+    }
+
+    public void setError(boolean hasError) {
+        if (mHasError == hasError) {
+            return;
+        }
+        mHasError = hasError;
+        mSlotLineStylesValid = false;
+        invalidate();
+    }
+
+    public boolean isError() {
+        return mHasError;
+    }
+
+    public void setPinLineColors(ColorStateList colors) {
+        mColorStates = colors;
+        mSlotLineStylesValid = false;
+        invalidate();
+    }
+
+    public void setPinBackground(Drawable pinBackground) {
+        mPinBackgroundDrawable = pinBackground;
+        invalidateSlotGeometry();
+        invalidate();
+    }
+
+    /**
+     * Whether the background drawable is rendered once per slot state and reused.
+     * Disable it for drawables that animate between states.
+     */
+    public void setPinBackgroundCacheEnabled(boolean enabled) {
+        mPinBackgroundCacheEnabled = enabled;
+        if (!enabled) {
+            mRenderer.clearBackgroundCache();
+        }
+        invalidate();
+    }
+
+    /**
+     * Whether a masked pin is kept in the saved instance state. Off by default, so a
+     * password is never written to a Bundle.
+     */
+    public void setSaveMaskedPin(boolean save) {
+        mSaveMaskedPin = save;
+    }
+
+    public void setOnPinEnteredListener(PinEditText.OnPinEnteredListener l) {
+        mOnPinEnteredListener = l;
+    }
+
+    /**
+     * Copies the entered pin into {@code dest}. The caller should wipe {@code dest} once
+     * it is done with it.
+     *
+     * @return The number of characters copied.
+     */
+    public int getPin(char[] dest) {
+        int length = Math.min(mPinLength, dest.length);
+        System.arraycopy(mPin, 0, dest, 0, length);
+        return length;
+    }
+
+    public int getPinLength() {
+        return mPinLength;
+    }
+
+    /**
+     * Clears the entered pin and overwrites its buffer.
+     */
+    public void clearPin() {
+        Arrays.fill(mPin, '\0');
+        mPinLength = 0;
+        mRenderer.invalidateTextWidths(0);
+        setError(false);
+        invalidate();
+    }
+
+    /**
+     * Request focus on this PinView and show the keyboard
+     */
+    public void focus() {
+        requestFocus();
+
+        InputMethodManager inputMethodManager = (InputMethodManager) getContext()
+                .getSystemService(Context.INPUT_METHOD_SERVICE);
+        inputMethodManager.showSoftInput(this, 0);
+    }
+
+    protected void append(CharSequence text) {
+        int length = text.length();
+        int oldLength = mPinLength;
+        for (int i = 0; i < length && mPinLength < mMaxLength; i++) {
+            char c = text.charAt(i);
+            if (PinInputFilter.accept(mInputAlphabet, c)) {
+                mPin[mPinLength++] = c;
+            }
+        }
+        if (mPinLength != oldLength) {
+            onPinChanged(oldLength);
+        }
+    }
+
+    protected void delete(int count) {
+        int oldLength = mPinLength;
+        mPinLength = Math.max(0, mPinLength - count);
+        if (mPinLength != oldLength) {
+            Arrays.fill(mPin, mPinLength, oldLength, '\0');
+            onPinChanged(mPinLength);
+        }
+    }
+
+    /**
+     * @param start The first slot that changed.
+     */
+    private void onPinChanged(int start) {
+        if (TextUtils.isEmpty(mPinMask)) {
+            //Masked slots always show the same glyphs, their widths stay valid.
+            mRenderer.invalidateTextWidths(start);
+        }
+        setError(false);
+        invalidate();
+        if (mPinLength == mMaxLength && mOnPinEnteredListener != null) {
+            //Wraps the live buffer, only valid during the callback.
+            mOnPinEnteredListener.onPinEntered(CharBuffer.wrap(mPin, 0, mPinLength));
+        }
+    }
+
+    @Override
+    public boolean onCheckIsTextEditor() {
+        return true;
+    }
+
+    @Override
+    public InputConnection onCreateInputConnection(EditorInfo outAttrs) {
+        outAttrs.inputType = mInputType;
+        outAttrs.imeOptions = EditorInfo.IME_ACTION_DONE | EditorInfo.IME_FLAG_NO_EXTRACT_UI | EditorInfo.IME_FLAG_NO_FULLSCREEN;
+        return new PinInputConnection();
+    }
+
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        if (keyCode == KeyEvent.KEYCODE_DEL) {
+            delete(1);
+            return true;
+        }
+
+        int unicodeChar = event.getUnicodeChar();
+        if (unicodeChar > 0 && !Character.isISOControl(unicodeChar)) {
+            if (mPinLength < mMaxLength && PinInputFilter.accept(mInputAlphabet, (char) unicodeChar)) {
+                mPin[mPinLength++] = (char) unicodeChar;
+                onPinChanged(mPinLength - 1);
+            }
+            return true;
+        }
+        return super.onKeyDown(keyCode, event);
+    }
+
+    private class PinInputConnection extends BaseInputConnection {
+
+        PinInputConnection() {
+            super(PinView.this, false);
+        }
+
+        @Override
+        public boolean commitText(CharSequence text, int newCursorPosition) {
+            append(text);
+            return true;
+        }
+
+        @Override
+        public boolean deleteSurroundingText(int beforeLength, int afterLength) {
+            delete(beforeLength);
+            return true;
+        }
+
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        float textSize = mCharPaint.getTextSize();
+        int desiredWidth = (int) (getPaddingLeft() + getPaddingRight() + textSize * 1.5f * mMaxLength + Math.max(0, mSpace) * (mMaxLength - 1));
+        int desiredHeight = (int) (getPaddingTop() + getPaddingBottom() + textSize + mTextBottomPadding * 2);
+        setMeasuredDimension(resolveSize(desiredWidth, widthMeasureSpec), resolveSize(desiredHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        invalidateSlotGeometry();
+    }
+
+    @Override
+    public void setPadding(int left, int top, int right, int bottom) {
+        super.setPadding(left, top, right, bottom);
+        invalidateSlotGeometry();
+    }
+
+    @Override
+    public void setPaddingRelative(int start, int top, int end, int bottom) {
+        super.setPaddingRelative(start, top, end, bottom);
+        invalidateSlotGeometry();
+    }
+
+    @Override
+    public void onRtlPropertiesChanged(int layoutDirection) {
+        super.onRtlPropertiesChanged(layoutDirection);
+        invalidateSlotGeometry();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mRenderer.clearBackgroundCache();
+    }
+
+    private void invalidateSlotGeometry() {
+        mSlotGeometryValid = false;
+        mRenderer.clearBackgroundCache();
+    }
+
+    /**
+     * Lays out the slots with {@link PinRenderer#layoutSlots}, like PinEditText, reusing the
+     * coordinate objects while the slot count does not change.
+     */
+    private void updateSlotGeometry() {
+        mSlotGeometryValid = true;
+        if (mLineCoords == null || mLineCoords.length != mMaxLength) {
+            mLineCoords = new RectF[mMaxLength];
+            for (int i = 0; i < mMaxLength; i++) {
+                mLineCoords[i] = new RectF();
+            }
+        }
+        int bottom = getHeight() - getPaddingBottom();
+        int top = mPinBackgroundDrawable == null ? bottom : getPaddingTop();
+        boolean isLayoutRtl = ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+        mCharSize = PinRenderer.layoutSlots(mLineCoords, getWidth(), ViewCompat.getPaddingStart(this), ViewCompat.getPaddingEnd(this),
+                top, bottom, mSpace, 0, 0, isLayoutRtl);
+        mTextBottom = bottom - mTextBottomPadding;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mSlotGeometryValid) {
+            updateSlotGeometry();
+        }
+        if (!mSlotLineStylesValid) {
+            mSlotLineStylesValid = true;
+            mRenderer.updateSlotStyles(mColorStates, null, mLineStroke, mLineStrokeSelected, isFocused());
+        }
+
+        char[] text = TextUtils.isEmpty(mPinMask) ? mPin : mRenderer.getMaskChars(mPinMask, mPinLength, mMaxLength);
+        float[] textWidths = mRenderer.getTextWidths(mCharPaint, text, mPinLength, mMaxLength);
+        float hintWidth = mRenderer.getHintWidth(mHintPaint, mPinHint);
+        boolean focused = isFocused();
+        for (int i = 0; i < mMaxLength; i++) {
+            RectF coords = mLineCoords[i];
+            if (mPinBackgroundDrawable != null) {
+                int slotState = PinRenderer.getSlotState(mHasError, focused, i < mPinLength, i == mPinLength);
+                mRenderer.drawBackground(canvas, mPinBackgroundDrawable, coords, slotState, mPinBackgroundCacheEnabled);
+            }
+
+            float middle = coords.left + mCharSize / 2;
+            if (i < mPinLength) {
+                canvas.drawText(text, i, 1, middle - textWidths[i] / 2, mTextBottom, mCharPaint);
+            } else if (mPinHint != null) {
+                canvas.drawText(mPinHint, middle - hintWidth / 2, mTextBottom, mHintPaint);
+            }
+        }
+        //Lines in front of the text, like PinEditText.
+        if (mPinBackgroundDrawable == null) {
+            mRenderer.drawLines(canvas, mLinesPaint, mLineCoords, 0, mMaxLength - 1, mPinLength, mHasError, focused);
+        }
+    }
+
+    @Override
+    public Parcelable onSaveInstanceState() {
+        PinEditText.SavedState ss = new PinEditText.SavedState(super.onSaveInstanceState());
+        if (TextUtils.isEmpty(mPinMask) || mSaveMaskedPin) {
+            ss.pin = Arrays.copyOf(mPin, mPinLength);
+        }
+        ss.hasError = mHasError;
+        ss.maxLength = mMaxLength;
+        return ss;
+    }
+
+    @Override
+    public void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof PinEditText.SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+
+        PinEditText.SavedState ss = (PinEditText.SavedState) state;
+        super.onRestoreInstanceState(ss.getSuperState());
+        if (ss.maxLength != mMaxLength) {
+            setMaxLength(ss.maxLength);
+        }
+        if (ss.pin != null) {
+            //Restored pin is shown as it is, without onPinEntered.
+            Arrays.fill(mPin, '\0');
+            mPinLength = Math.min(ss.pin.length, mMaxLength);
+            System.arraycopy(ss.pin, 0, mPin, 0, mPinLength);
+            Arrays.fill(ss.pin, '\0');
+            mRenderer.invalidateTextWidths(0);
+            setError(ss.hasError);
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onFocusChanged(boolean gainFocus, int direction, @Nullable Rect previouslyFocusedRect) {
+        super.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+        mSlotLineStylesValid = false;
+        invalidate();
+    }
+
+}
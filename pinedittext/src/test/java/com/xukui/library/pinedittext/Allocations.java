@@ -0,0 +1,38 @@
+package com.xukui.library.pinedittext;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated by the current thread, as reported by HotSpot. Other JVMs may not
+ * support it, tests should check {@link #isSupported()} first.
+ */
+final class Allocations {
+
+    private Allocations() {
+    }
+
+    static boolean isSupported() {
+        return getThreadMXBean() != null;
+    }
+
+    static long allocatedBytes() {
+        return getThreadMXBean().getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        if (!threadBean.isThreadAllocatedMemoryEnabled()) {
+            threadBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        return threadBean;
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.xukui.library.pinedittext;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.util.TypedValue;
+import android.view.View;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drawing a frame must not allocate, whatever the configuration. Frames are drawn into a
+ * {@link RecordingCanvas}, so only the allocations of the views themselves are counted.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PinAllocationTest {
+
+    private static final int WARMUP_FRAMES = 1000;
+    private static final int FRAMES = 1000;
+    private static final int BATCHES = 3;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Allocation counting not supported by this JVM", Allocations.isSupported());
+        mContext = RuntimeEnvironment.application;
+        //Frame callbacks never run, running animations stay on their first frame.
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void pinEditText() {
+        assertNoAllocations(createPinEditText(), "plain");
+    }
+
+    @Test
+    public void pinEditTextWithMaskAndHint() {
+        PinEditText view = createPinEditText();
+        view.setMask(PinEditText.DEFAULT_MASK);
+        view.setCharHint("-");
+        assertNoAllocations(view, "mask and hint");
+    }
+
+    @Test
+    public void pinEditTextWithBackground() {
+        PinEditText view = createPinEditText();
+        view.setPinBackground(new ColorDrawable(Color.LTGRAY));
+        assertNoAllocations(view, "background");
+    }
+
+    @Test
+    public void pinEditTextWithShape() {
+        PinEditText view = createPinEditText();
+        view.setPinShape(PinEditText.SHAPE_ROUNDED_BOX);
+        view.setPinShapeCornerRadius(8);
+        view.setPinShapeFillColors(ColorStateList.valueOf(Color.LTGRAY));
+        assertNoAllocations(view, "shape");
+    }
+
+    @Test
+    public void pinEditTextAnimating() {
+        PinEditText view = createPinEditText();
+        view.setAnimateText(true);
+        view.getText().append('3');
+        assertNoAllocations(view, "animation");
+    }
+
+    @Test
+    public void pinEditTextWithError() {
+        PinEditText view = createPinEditText();
+        view.setError(true);
+        assertNoAllocations(view, "error");
+    }
+
+    @Test
+    public void pinView() {
+        PinView view = new PinView(mContext);
+        view.setMaxLength(6);
+        view.setCharHint("-");
+        view.append("12");
+        layout(view);
+        assertNoAllocations(view, "pin view");
+
+        view.setMask(PinEditText.DEFAULT_MASK);
+        view.setPinBackground(new ColorDrawable(Color.LTGRAY));
+        layout(view);
+        assertNoAllocations(view, "masked pin view with background");
+    }
+
+    private PinEditText createPinEditText() {
+        PinEditText view = new PinEditText(mContext);
+        view.setMaxLength(6);
+        view.setAnimateText(false);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, 40);
+        view.setText("12");
+        layout(view);
+        return view;
+    }
+
+    private static void layout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(360, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(80, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * The first frames fill the caches. Of the later batches, the one with the fewest bytes
+     * must average less than one byte per frame, so that no frame allocates.
+     */
+    private static void assertNoAllocations(View view, String config) {
+        RecordingCanvas canvas = new RecordingCanvas(false);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            draw(view, canvas);
+        }
+
+        long fewestBytes = Long.MAX_VALUE;
+        for (int batch = 0; batch < BATCHES; batch++) {
+            long start = Allocations.allocatedBytes();
+            for (int i = 0; i < FRAMES; i++) {
+                draw(view, canvas);
+            }
+            fewestBytes = Math.min(fewestBytes, Allocations.allocatedBytes() - start);
+        }
+        assertTrue(config + ": " + fewestBytes + " bytes allocated in " + FRAMES + " frames", fewestBytes < FRAMES);
+    }
+
+    /**
+     * Robolectric's shadow of {@link View#draw} does not call onDraw.
+     */
+    private static void draw(View view, RecordingCanvas canvas) {
+        if (view instanceof PinView) {
+            ((PinView) view).onDraw(canvas);
+        } else {
+            ((PinEditText) view).onDraw(canvas);
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.xukui.library.pinedittext;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.StateListDrawable;
+import android.util.TypedValue;
+import android.view.View;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Locale;
+
+/**
+ * Headless microbenchmark of the PinEditText hot paths: a frame, an animated frame,
+ * measure and layout, and the time from the last character to onPinEntered, for 4, 6,
+ * 8 and 12 slots with and without mask, hint and background drawable.
+ * <p>
+ * The numbers come from a JVM with Robolectric shadows, not from a device. They are
+ * meant to be compared between two builds on the same machine. Skipped unless run with
+ * {@code ./gradlew :pinedittext:testDebugUnitTest -Pbenchmark}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PinEditTextBenchmark {
+
+    private static final int[] SLOT_COUNTS = new int[]{4, 6, 8, 12};
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 2000;
+    private static final int BATCHES = 5;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Run with -Pbenchmark", Boolean.getBoolean("pinedittext.benchmark"));
+        mContext = RuntimeEnvironment.application;
+        //Frame callbacks never run, running animations stay on their first frame.
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void benchmark() {
+        //Discarded, so the first configuration does not pay for the JIT compilation.
+        for (int config = 0; config < 8; config++) {
+            measureDraw(createView(4, (config & 1) != 0, (config & 2) != 0, (config & 4) != 0), config % 2 == 0);
+            measureLayout(createView(4, false, false, false));
+            measurePinEntered(createView(4, false, false, false));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%5s %5s %5s %5s %10s %10s %10s %10s %10s %10s",
+                "slots", "mask", "hint", "bg", "draw ns", "draw B", "anim ns", "anim B", "layout ns", "entered ns"));
+
+        for (int slots : SLOT_COUNTS) {
+            for (int config = 0; config < 8; config++) {
+                boolean mask = (config & 1) != 0;
+                boolean hint = (config & 2) != 0;
+                boolean background = (config & 4) != 0;
+
+                Result draw = measureDraw(createView(slots, mask, hint, background), false);
+                Result animation = measureDraw(createView(slots, mask, hint, background), true);
+                Result layout = measureLayout(createView(slots, mask, hint, background));
+                Result entered = measurePinEntered(createView(slots, mask, hint, background));
+
+                System.out.println(String.format(Locale.ROOT, "%5d %5b %5b %5b %10.0f %10.1f %10.0f %10.1f %10.0f %10.0f",
+                        slots, mask, hint, background,
+                        draw.nanos, draw.bytes, animation.nanos, animation.bytes, layout.nanos, entered.nanos));
+            }
+        }
+    }
+
+    private PinEditText createView(int slots, boolean mask, boolean hint, boolean background) {
+        PinEditText view = new PinEditText(mContext, Robolectric.buildAttributeSet().build());
+        view.setMaxLength(slots);
+        view.setAnimateText(false);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, 40);
+        view.setPinLineColors(new ColorStateList(
+                new int[][]{PinEditText.STATE_SET_ERROR, PinEditText.STATE_SET_SELECTED, PinEditText.STATE_SET_FOCUSED, new int[0]},
+                new int[]{Color.RED, Color.BLUE, Color.BLACK, Color.GRAY}));
+        if (mask) {
+            view.setMask(PinEditText.DEFAULT_MASK);
+        }
+        if (hint) {
+            view.setCharHint("-");
+        }
+        if (background) {
+            StateListDrawable drawable = new StateListDrawable();
+            drawable.addState(PinEditText.STATE_SET_FOCUSED, new ColorDrawable(Color.BLUE));
+            drawable.addState(new int[0], new ColorDrawable(Color.LTGRAY));
+            view.setPinBackground(drawable);
+        }
+        layout(view, slots * 60, 80);
+        return view;
+    }
+
+    private static void layout(View view, int width, int height) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * A frame with half of the slots filled. When {@code animating}, the filled slots are
+     * drawn as if their pop-in animation was running.
+     */
+    private Result measureDraw(PinEditText view, boolean animating) {
+        view.setAnimateText(animating);
+        int filled = view.mMaxLength / 2;
+        for (int i = 0; i < filled; i++) {
+            view.getText().append((char) ('0' + i % 10));
+        }
+
+        RecordingCanvas canvas = new RecordingCanvas(false);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            view.onDraw(canvas);
+        }
+
+        Result result = new Result();
+        for (int batch = 0; batch < BATCHES; batch++) {
+            long bytes = Allocations.isSupported() ? Allocations.allocatedBytes() : 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                view.onDraw(canvas);
+            }
+            long nanos = System.nanoTime() - start;
+            bytes = Allocations.isSupported() ? Allocations.allocatedBytes() - bytes : -ITERATIONS;
+            result.add(nanos, bytes);
+        }
+        return result;
+    }
+
+    /**
+     * Measure and layout at a new width every iteration, so neither is skipped as unchanged.
+     */
+    private Result measureLayout(PinEditText view) {
+        int width = view.getWidth();
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            layout(view, width + i % 2, 80);
+        }
+
+        Result result = new Result();
+        for (int batch = 0; batch < BATCHES; batch++) {
+            long bytes = Allocations.isSupported() ? Allocations.allocatedBytes() : 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                layout(view, width + i % 2, 80);
+            }
+            long nanos = System.nanoTime() - start;
+            bytes = Allocations.isSupported() ? Allocations.allocatedBytes() - bytes : -ITERATIONS;
+            result.add(nanos, bytes);
+        }
+        return result;
+    }
+
+    /**
+     * Typing the last character until onPinEntered. Animations are off, so this is the
+     * cost of the code path only.
+     */
+    private Result measurePinEntered(PinEditText view) {
+        final long[] enteredTime = new long[1];
+        view.setOnPinEnteredListener(new PinEditText.OnPinEnteredListener() {
+
+            @Override
+            public void onPinEntered(CharSequence str) {
+                enteredTime[0] = System.nanoTime();
+            }
+
+        });
+        for (int i = 0; i < view.mMaxLength - 1; i++) {
+            view.getText().append('1');
+        }
+
+        int last = view.mMaxLength - 1;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            view.getText().append('2');
+            view.getText().delete(last, last + 1);
+        }
+
+        Result result = new Result();
+        for (int batch = 0; batch < BATCHES; batch++) {
+            long latency = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = System.nanoTime();
+                view.getText().append('2');
+                latency += enteredTime[0] - start;
+                view.getText().delete(last, last + 1);
+            }
+            result.add(latency, 0);
+        }
+        return result;
+    }
+
+    /**
+     * The fastest batch, averaged per iteration.
+     */
+    private static class Result {
+
+        double nanos = Double.MAX_VALUE;
+        double bytes = Double.MAX_VALUE;
+
+        void add(long batchNanos, long batchBytes) {
+            nanos = Math.min(nanos, (double) batchNanos / ITERATIONS);
+            bytes = Math.min(bytes, (double) batchBytes / ITERATIONS);
+        }
+
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.xukui.library.pinedittext;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Saves the state of one view, sends it through a {@link Parcel} and restores it into a
+ * new view, as happens when an activity is recreated.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PinEditTextSavedStateTest {
+
+    private PinEditText mSaved;
+    private PinEditText mRestored;
+
+    @Before
+    public void setUp() {
+        //Frame callbacks never run, running animations stay on their first frame.
+        ShadowLooper.pauseMainLooper();
+        mSaved = new PinEditText(RuntimeEnvironment.application);
+        mRestored = new PinEditText(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void pinIsRestoredWithCursorAtEnd() {
+        mSaved.setText("123");
+        mSaved.setError(true);
+
+        mRestored.onRestoreInstanceState(parcel(mSaved.onSaveInstanceState()));
+
+        assertEquals("123", mRestored.getText().toString());
+        assertEquals(3, mRestored.getPinLength());
+        assertEquals(3, mRestored.getSelectionStart());
+        assertEquals(3, mRestored.getSelectionEnd());
+        assertTrue(mRestored.isError());
+    }
+
+    @Test
+    public void maskedPinIsNotSaved() {
+        mSaved.setMask(PinEditText.DEFAULT_MASK);
+        mSaved.setText("123");
+        mSaved.setError(true);
+
+        PinEditText.SavedState state = parcel(mSaved.onSaveInstanceState());
+        assertNull(state.pin);
+
+        mRestored.onRestoreInstanceState(state);
+        assertEquals("", mRestored.getText().toString());
+        assertEquals(0, mRestored.getPinLength());
+        assertFalse(mRestored.isError());
+    }
+
+    @Test
+    public void maskedPinIsSavedWhenAllowed() {
+        mSaved.setMask(PinEditText.DEFAULT_MASK);
+        mSaved.setSaveMaskedPin(true);
+        mSaved.setText("123");
+
+        mRestored.onRestoreInstanceState(parcel(mSaved.onSaveInstanceState()));
+
+        assertEquals("123", mRestored.getText().toString());
+    }
+
+    @Test
+    public void restoringDoesNotEnterOrValidate() {
+        final int[] calls = new int[2];
+        mRestored.setOnPinEnteredListener(new PinEditText.OnPinEnteredListener() {
+
+            @Override
+            public void onPinEntered(CharSequence str) {
+                calls[0]++;
+            }
+
+        });
+        mRestored.setPinValidator(new PinEditText.PinValidator() {
+
+            @Override
+            public boolean validate(char[] pin, int length) {
+                calls[1]++;
+                return true;
+            }
+
+        }, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+
+        });
+        mSaved.setText("1234");
+
+        mRestored.onRestoreInstanceState(parcel(mSaved.onSaveInstanceState()));
+
+        assertEquals("1234", mRestored.getText().toString());
+        assertEquals(0, calls[0]);
+        assertEquals(0, calls[1]);
+    }
+
+    @Test
+    public void maxLengthIsRestoredBeforePin() {
+        mSaved.setMaxLength(6);
+        mSaved.setText("123456");
+
+        mRestored.onRestoreInstanceState(parcel(mSaved.onSaveInstanceState()));
+
+        assertEquals(6, mRestored.mMaxLength);
+        assertEquals("123456", mRestored.getText().toString());
+        //The restored length filter still applies.
+        mRestored.getText().append('7');
+        assertEquals("123456", mRestored.getText().toString());
+    }
+
+    private static PinEditText.SavedState parcel(Parcelable state) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            state.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return PinEditText.SavedState.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+}
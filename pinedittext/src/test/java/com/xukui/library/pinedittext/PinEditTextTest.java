@@ -0,0 +1,133 @@
+package com.xukui.library.pinedittext;
+
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class PinEditTextTest {
+
+    private static final PinEditText.PinValidator REJECTING_VALIDATOR = new PinEditText.PinValidator() {
+
+        @Override
+        public boolean validate(char[] pin, int length) {
+            return false;
+        }
+
+    };
+
+    private PinEditText mView;
+
+    @Before
+    public void setUp() {
+        //Frame callbacks never run, running animations stay on their first frame.
+        ShadowLooper.pauseMainLooper();
+        mView = new PinEditText(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void setMaxLengthToCurrentLengthLimitsInput() {
+        mView.setMaxLength(4);
+        mView.getText().append("12345");
+
+        assertEquals("1234", mView.getText().toString());
+    }
+
+    @Test
+    public void setMaxLengthLimitsInput() {
+        mView.setMaxLength(6);
+        mView.getText().append("12345678");
+
+        assertEquals("123456", mView.getText().toString());
+    }
+
+    @Test
+    public void composingTextIsAnimated() {
+        layout();
+        mView.setAnimateText(true);
+        mView.getText().append('1');
+        //The IME replaces its composing "1" with "12".
+        mView.getText().replace(0, 1, "12");
+
+        assertNotEquals(0, mView.mSlotAnimationStart[1]);
+    }
+
+    @Test
+    public void pastedTextIsNotAnimated() {
+        layout();
+        mView.setAnimateText(true);
+        mView.getText().append("123");
+
+        assertEquals(0, mView.mActiveAnimations);
+    }
+
+    @Test
+    public void shapesAreDrawnOncePerSlotState() {
+        mView.setPinShape(PinEditText.SHAPE_ROUNDED_BOX);
+        mView.setPinShapeFillColors(ColorStateList.valueOf(Color.LTGRAY));
+        mView.setText("12");
+        layout();
+
+        RecordingCanvas canvas = new RecordingCanvas(false);
+        mView.drawPin(canvas);
+
+        //Two characters, then a fill and an outline for the filled and the empty slots.
+        assertEquals(2 + 2 * 2, canvas.getDrawOpCount());
+    }
+
+    @Test
+    public void rejectedValidationIsIgnored() {
+        mView.setPinValidator(REJECTING_VALIDATOR, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+
+        });
+        mView.getText().append("1234");
+
+        assertEquals("1234", mView.getText().toString());
+        assertFalse(mView.isError());
+    }
+
+    @Test
+    public void detachCancelsValidation() {
+        final Runnable[] queued = new Runnable[1];
+        mView.setPinValidator(REJECTING_VALIDATOR, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                queued[0] = command;
+            }
+
+        });
+        mView.getText().append("1234");
+        mView.onDetachedFromWindow();
+        queued[0].run();
+        ShadowLooper.runUiThreadTasks();
+
+        assertFalse(mView.isError());
+    }
+
+    private void layout() {
+        mView.measure(View.MeasureSpec.makeMeasureSpec(360, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(80, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+    }
+
+}
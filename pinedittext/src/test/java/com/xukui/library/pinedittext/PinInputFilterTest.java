@@ -0,0 +1,98 @@
+package com.xukui.library.pinedittext;
+
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.SpannedString;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class PinInputFilterTest {
+
+    @Test
+    public void acceptedInputIsKept() {
+        PinInputFilter filter = new PinInputFilter(PinEditText.INPUT_ALPHABET_DIGITS, 4);
+
+        assertNull(filter(filter, "12", "", 0, 0));
+        assertNull(filter(filter, "34", "12", 2, 2));
+    }
+
+    @Test
+    public void inputPastMaxLengthIsCut() {
+        PinInputFilter filter = new PinInputFilter(PinEditText.INPUT_ALPHABET_DIGITS, 4);
+        SpannableString source = new SpannableString("345");
+        Object composing = new Object();
+        source.setSpan(composing, 0, 3, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE | Spanned.SPAN_COMPOSING);
+
+        CharSequence filtered = filter(filter, source, "12", 2, 2);
+
+        assertEquals("34", filtered.toString());
+        assertTrue(filtered instanceof Spanned);
+        Spanned spanned = (Spanned) filtered;
+        assertEquals(0, spanned.getSpanStart(composing));
+        assertEquals(2, spanned.getSpanEnd(composing));
+    }
+
+    @Test
+    public void surrogatePairIsNotSplit() {
+        PinInputFilter filter = new PinInputFilter(PinEditText.INPUT_ALPHABET_ANY, 2);
+
+        CharSequence filtered = filter(filter, "a😀", "", 0, 0);
+
+        assertEquals("a", filtered.toString());
+    }
+
+    @Test
+    public void rejectedCharactersAreRemoved() {
+        PinInputFilter filter = new PinInputFilter(PinEditText.INPUT_ALPHABET_DIGITS, 6);
+        SpannableString source = new SpannableString("1a2b3");
+        Object all = new Object();
+        Object two = new Object();
+        source.setSpan(all, 0, 5, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        source.setSpan(two, 2, 3, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        CharSequence filtered = filter(filter, source, "", 0, 0);
+
+        assertEquals("123", filtered.toString());
+        Spanned spanned = (Spanned) filtered;
+        assertEquals(0, spanned.getSpanStart(all));
+        assertEquals(3, spanned.getSpanEnd(all));
+        assertEquals(1, spanned.getSpanStart(two));
+        assertEquals(2, spanned.getSpanEnd(two));
+    }
+
+    @Test
+    public void rejectedCharactersAreRemovedBeforeCutting() {
+        PinInputFilter filter = new PinInputFilter(PinEditText.INPUT_ALPHABET_HEX, 4);
+
+        CharSequence filtered = filter(filter, "1x2y3z4f5", "", 0, 0);
+
+        assertEquals("1234", filtered.toString());
+    }
+
+    @Test
+    public void fullInputRejectsEverything() {
+        PinInputFilter filter = new PinInputFilter(PinEditText.INPUT_ALPHABET_DIGITS, 4);
+
+        assertEquals("", filter(filter, "5", "1234", 4, 4));
+        assertEquals("", filter(filter, "56", "12345", 2, 2));
+    }
+
+    @Test
+    public void replacingTextFreesItsLength() {
+        PinInputFilter filter = new PinInputFilter(PinEditText.INPUT_ALPHABET_DIGITS, 4);
+
+        assertNull(filter(filter, "56", "1234", 2, 4));
+    }
+
+    private static CharSequence filter(PinInputFilter filter, CharSequence source, String dest, int dstart, int dend) {
+        return filter.filter(source, 0, source.length(), new SpannedString(dest), dstart, dend);
+    }
+
+}
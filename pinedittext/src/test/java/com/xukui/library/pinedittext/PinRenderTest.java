@@ -0,0 +1,238 @@
+package com.xukui.library.pinedittext;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.res.ColorStateList;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.StateListDrawable;
+import android.os.Build;
+import android.util.TypedValue;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders PinEditText and PinView into a {@link RecordingCanvas} and compares the draw
+ * calls with the goldens in {@code src/test/resources/goldens}. Record them again after
+ * an intended change with {@code ./gradlew :pinedittext:testDebugUnitTest -PrecordGoldens}.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class PinRenderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int SLOTS = 4;
+    private static final int SLOT_WIDTH = 60;
+    private static final int HEIGHT = 80;
+    private static final int TIMED_FRAMES = 100;
+
+    private static final int MASK = 1;
+    private static final int HINT = 1 << 1;
+    private static final int BACKGROUND = 1 << 2;
+    private static final int RTL = 1 << 3;
+    private static final int NEGATIVE_SPACE = 1 << 4;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0}")
+    public static List<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (boolean pinView : new boolean[]{false, true}) {
+            String prefix = pinView ? "pin_view_" : "pin_edit_text_";
+            parameters.add(new Object[]{prefix + "plain", pinView, 0});
+            parameters.add(new Object[]{prefix + "mask", pinView, MASK});
+            parameters.add(new Object[]{prefix + "hint", pinView, HINT});
+            parameters.add(new Object[]{prefix + "background", pinView, BACKGROUND});
+            parameters.add(new Object[]{prefix + "rtl", pinView, RTL});
+            parameters.add(new Object[]{prefix + "negative_space", pinView, NEGATIVE_SPACE});
+            parameters.add(new Object[]{prefix + "all", pinView, MASK | HINT | BACKGROUND | RTL | NEGATIVE_SPACE});
+        }
+        return parameters;
+    }
+
+    private final String mName;
+    private final boolean mPinView;
+    private final int mFlags;
+    private Context mContext;
+
+    public PinRenderTest(String name, boolean pinView, int flags) {
+        mName = name;
+        mPinView = pinView;
+        mFlags = flags;
+    }
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        //Views only resolve an RTL layout direction with RTL support and a target of API 17+.
+        ApplicationInfo applicationInfo = mContext.getApplicationInfo();
+        applicationInfo.flags |= ApplicationInfo.FLAG_SUPPORTS_RTL;
+        applicationInfo.targetSdkVersion = Math.max(applicationInfo.targetSdkVersion, Build.VERSION_CODES.JELLY_BEAN_MR1);
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void render() throws IOException {
+        View view = mPinView ? createPinView() : createPinEditText();
+        int width = SLOTS * SLOT_WIDTH;
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, width, HEIGHT);
+        if (has(RTL)) {
+            assertEquals(View.LAYOUT_DIRECTION_RTL, view.getLayoutDirection());
+        }
+
+        RecordingCanvas canvas = new RecordingCanvas(true);
+        onDraw(view, canvas);
+        String frame = canvas.getLog();
+        int drawOps = canvas.getDrawOpCount();
+        assertTrue("Nothing drawn", drawOps > 0);
+
+        //A second frame from the caches must be the same as the first one.
+        canvas.reset();
+        onDraw(view, canvas);
+        assertEquals(frame, canvas.getLog());
+
+        //Timings are only printed with -Pbenchmark.
+        if (Boolean.getBoolean("pinedittext.benchmark")) {
+            RecordingCanvas counter = new RecordingCanvas(false);
+            long start = System.nanoTime();
+            for (int i = 0; i < TIMED_FRAMES; i++) {
+                onDraw(view, counter);
+            }
+            System.out.println(String.format(Locale.ROOT, "%s: %d draw ops, %d ns per frame",
+                    mName, drawOps, (System.nanoTime() - start) / TIMED_FRAMES));
+        }
+
+        checkGolden("draw ops: " + drawOps + "\n" + frame);
+    }
+
+    /**
+     * Robolectric's shadow of {@link View#draw} does not call onDraw.
+     */
+    private static void onDraw(View view, Canvas canvas) {
+        if (view instanceof PinView) {
+            ((PinView) view).onDraw(canvas);
+        } else {
+            ((PinEditText) view).onDraw(canvas);
+        }
+    }
+
+    private PinEditText createPinEditText() {
+        PinEditText view = new PinEditText(mContext);
+        view.setMaxLength(SLOTS);
+        view.setAnimateText(false);
+        view.setTextSize(TypedValue.COMPLEX_UNIT_PX, 40);
+        view.setTextColor(Color.BLACK);
+        view.setHintTextColor(Color.GRAY);
+        view.setPinLineColors(createLineColors());
+        view.setPaddingRelative(16, 4, 8, 4);
+        if (has(MASK)) {
+            view.setMask(PinEditText.DEFAULT_MASK);
+        }
+        if (has(HINT)) {
+            view.setCharHint("-");
+        }
+        if (has(BACKGROUND)) {
+            view.setPinBackground(createBackground());
+        }
+        if (has(RTL)) {
+            view.setLayoutDirection(View.LAYOUT_DIRECTION_RTL);
+        }
+        if (has(NEGATIVE_SPACE)) {
+            view.mSpace = -1;
+        }
+        view.setText("12");
+        return view;
+    }
+
+    private PinView createPinView() {
+        PinView view = new PinView(mContext);
+        view.setMaxLength(SLOTS);
+        view.setPinLineColors(createLineColors());
+        view.setPaddingRelative(16, 4, 8, 4);
+        if (has(MASK)) {
+            view.setMask(PinEditText.DEFAULT_MASK);
+        }
+        if (has(HINT)) {
+            view.setCharHint("-");
+        }
+        if (has(BACKGROUND)) {
+            view.setPinBackground(createBackground());
+        }
+        if (has(RTL)) {
+            view.setLayoutDirection(View.LAYOUT_DIRECTION_RTL);
+        }
+        if (has(NEGATIVE_SPACE)) {
+            view.mSpace = -1;
+        }
+        view.append("12");
+        return view;
+    }
+
+    private static ColorStateList createLineColors() {
+        return new ColorStateList(
+                new int[][]{PinEditText.STATE_SET_ERROR, PinEditText.STATE_SET_SELECTED, PinEditText.STATE_SET_FOCUSED, new int[0]},
+                new int[]{Color.RED, Color.BLUE, Color.BLACK, Color.GRAY});
+    }
+
+    private static StateListDrawable createBackground() {
+        StateListDrawable drawable = new StateListDrawable();
+        drawable.addState(PinEditText.STATE_SET_UNFOCUSED_FILLED, new ColorDrawable(Color.DKGRAY));
+        drawable.addState(new int[0], new ColorDrawable(Color.LTGRAY));
+        return drawable;
+    }
+
+    private boolean has(int flag) {
+        return (mFlags & flag) != 0;
+    }
+
+    private void checkGolden(String actual) throws IOException {
+        String recordDir = System.getProperty("pinedittext.goldens");
+        if (recordDir != null && !recordDir.isEmpty()) {
+            File file = new File(recordDir, mName + ".txt");
+            file.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                out.write(actual.getBytes(UTF_8));
+            } finally {
+                out.close();
+            }
+            return;
+        }
+
+        InputStream in = getClass().getClassLoader().getResourceAsStream("goldens/" + mName + ".txt");
+        assertNotNull("Missing golden " + mName + ", record it with -PrecordGoldens", in);
+        try {
+            ByteArrayOutputStream golden = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                golden.write(buffer, 0, count);
+            }
+            assertEquals(mName, new String(golden.toByteArray(), UTF_8), actual);
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.xukui.library.pinedittext;
+
+import android.content.pm.ApplicationInfo;
+import android.os.Build;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class PinViewTest {
+
+    private PinView mView;
+    private RecordingCanvas mCanvas;
+
+    @Before
+    public void setUp() {
+        //Views only resolve an RTL layout direction with RTL support and a target of API 17+.
+        ApplicationInfo applicationInfo = RuntimeEnvironment.application.getApplicationInfo();
+        applicationInfo.flags |= ApplicationInfo.FLAG_SUPPORTS_RTL;
+        applicationInfo.targetSdkVersion = Math.max(applicationInfo.targetSdkVersion, Build.VERSION_CODES.JELLY_BEAN_MR1);
+
+        mView = new PinView(RuntimeEnvironment.application);
+        mView.setMaxLength(4);
+        mView.measure(View.MeasureSpec.makeMeasureSpec(240, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(80, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, 240, 80);
+        mCanvas = new RecordingCanvas(false);
+        mView.onDraw(mCanvas);
+    }
+
+    @Test
+    public void setPaddingMovesSlots() {
+        mView.setPadding(40, 0, 0, 0);
+        mView.onDraw(mCanvas);
+
+        assertEquals(40, mView.mLineCoords[0].left, 0);
+    }
+
+    @Test
+    public void setPaddingRelativeMovesSlots() {
+        mView.setPaddingRelative(40, 0, 0, 0);
+        mView.onDraw(mCanvas);
+
+        assertEquals(40, mView.mLineCoords[0].left, 0);
+    }
+
+    @Test
+    public void layoutDirectionChangeMirrorsSlots() {
+        mView.setLayoutDirection(View.LAYOUT_DIRECTION_RTL);
+        mView.onDraw(mCanvas);
+
+        assertEquals(240, mView.mLineCoords[0].right, 0);
+    }
+
+}
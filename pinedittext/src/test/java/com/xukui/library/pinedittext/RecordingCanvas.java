@@ -0,0 +1,153 @@
+package com.xukui.library.pinedittext;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.Locale;
+
+/**
+ * A canvas that draws nothing. It counts the draw calls and, when logging, writes one
+ * line per draw call, so that a frame can be compared as text on any JVM.
+ * Counting does not allocate.
+ */
+class RecordingCanvas extends Canvas {
+
+    private final StringBuilder mLog;//null when only counting
+    private int mDrawOps;
+    private int mSaveCount = 1;
+    private float mTranslateX;
+    private float mTranslateY;
+
+    RecordingCanvas(boolean log) {
+        mLog = log ? new StringBuilder() : null;
+    }
+
+    int getDrawOpCount() {
+        return mDrawOps;
+    }
+
+    String getLog() {
+        return mLog == null ? "" : mLog.toString();
+    }
+
+    void reset() {
+        mDrawOps = 0;
+        mSaveCount = 1;
+        mTranslateX = 0;
+        mTranslateY = 0;
+        if (mLog != null) {
+            mLog.setLength(0);
+        }
+    }
+
+    @Override
+    public int save() {
+        return mSaveCount++;
+    }
+
+    @Override
+    public void restoreToCount(int saveCount) {
+        mSaveCount = saveCount;
+        mTranslateX = 0;
+        mTranslateY = 0;
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        mTranslateX += dx;
+        mTranslateY += dy;
+    }
+
+    @Override
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        mDrawOps++;
+        if (mLog != null) {
+            logText(new String(text, index, count), x, y, paint);
+        }
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+        mDrawOps++;
+        if (mLog != null) {
+            logText(text, x, y, paint);
+        }
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        mDrawOps++;
+        if (mLog != null) {
+            log("line %.1f,%.1f -> %.1f,%.1f color=%08x stroke=%.1f", startX + mTranslateX, startY + mTranslateY,
+                    stopX + mTranslateX, stopY + mTranslateY, paint.getColor(), paint.getStrokeWidth());
+        }
+    }
+
+    @Override
+    public void drawLines(float[] pts, int offset, int count, Paint paint) {
+        mDrawOps++;
+        if (mLog != null) {
+            log("lines color=%08x stroke=%.1f", paint.getColor(), paint.getStrokeWidth());
+            for (int i = offset; i + 3 < offset + count; i += 4) {
+                log("  %.1f,%.1f -> %.1f,%.1f", pts[i], pts[i + 1], pts[i + 2], pts[i + 3]);
+            }
+        }
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        mDrawOps++;
+        if (mLog != null) {
+            log("bitmap %dx%d at %.1f,%.1f", bitmap.getWidth(), bitmap.getHeight(), left + mTranslateX, top + mTranslateY);
+        }
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        mDrawOps++;
+        if (mLog != null) {
+            log("path %s color=%08x stroke=%.1f at %.1f,%.1f", paint.getStyle(), paint.getColor(), paint.getStrokeWidth(), mTranslateX, mTranslateY);
+        }
+    }
+
+    @Override
+    public void drawRect(Rect rect, Paint paint) {
+        drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        mDrawOps++;
+        if (mLog != null) {
+            log("rect %.1f,%.1f -> %.1f,%.1f color=%08x", left + mTranslateX, top + mTranslateY, right + mTranslateX, bottom + mTranslateY, paint.getColor());
+        }
+    }
+
+    private void logText(String text, float x, float y, Paint paint) {
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 || c > 0x7e) {
+                escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        //No text size, Robolectric's Paint copy constructor does not copy it.
+        log("text \"%s\" at %.1f,%.1f color=%08x", escaped, x + mTranslateX, y + mTranslateY, paint.getColor());
+    }
+
+    private void log(String format, Object... args) {
+        mLog.append(String.format(Locale.ROOT, format, args)).append('\n');
+    }
+
+}